@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashSet;
+
+/*
+    Downloads art packs from a server on the device itself, so these run without a network.
+ */
+public class TestArtPackManager extends AndroidTestCase {
+
+    private LocalHttpServer mServer;
+    private File mRoot;
+    private ArtPackManager mManager;
+    private String mPackFormat;
+    private int mImageCount;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalHttpServer();
+        mRoot = new File(mContext.getCacheDir(), "test_art_packs");
+        deleteRecursively(mRoot);
+        mManager = new ArtPackManager(mRoot);
+        mPackFormat = mServer.getUrl("/pack/art_%s.png");
+
+        HashSet<String> artNames = new HashSet<>();
+        for (int kind = 0; kind < WeatherConditions.KIND_COUNT; kind++) {
+            artNames.add(WeatherConditions.getArtName(kind));
+        }
+        for (String artName : artNames) {
+            mServer.setResponse("/pack/art_" + artName + ".png", createPng(16));
+        }
+        mImageCount = artNames.size();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteRecursively(mRoot);
+        super.tearDown();
+    }
+
+    private static byte[] createPng(int size) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    public void testDownloadsWholePackOnce() {
+        assertNull(mManager.getPackDir(mPackFormat));
+
+        assertTrue(mManager.download(mPackFormat));
+        assertEquals(mImageCount, mServer.getRequestCount());
+        assertNotNull(mManager.getPackDir(mPackFormat));
+
+        // It's on disk now, so nothing goes to the network again.
+        assertTrue(mManager.download(mPackFormat));
+        assertEquals(mImageCount, mServer.getRequestCount());
+    }
+
+    public void testServesArtFromDiskOffline() throws Exception {
+        assertTrue(mManager.download(mPackFormat));
+        mServer.shutdown();
+
+        // A new manager, as after a restart, with no server to talk to.
+        ArtPackManager manager = new ArtPackManager(mRoot);
+        File art = manager.getArtFile(mPackFormat, 803);
+        assertNotNull(art);
+        assertTrue(art.getPath().endsWith("clouds"));
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(art.getPath(), options);
+        assertEquals(16, options.outWidth);
+
+        assertNull(manager.getArtFile(mPackFormat, 900));
+        assertNull(manager.getArtFile(mServer.getUrl("/other/art_%s.png"), 803));
+    }
+
+    public void testIncompletePackIsNotKept() {
+        mServer.setResponse("/pack/art_storm.png", null);
+        assertFalse(mManager.download(mPackFormat));
+        assertNull(mManager.getPackDir(mPackFormat));
+        assertNull(mManager.getArtFile(mPackFormat, 800));
+    }
+
+    public void testPackThatIsNotImagesIsNotKept() {
+        mServer.setResponse("/pack/art_fog.png", "<html>Not here</html>".getBytes());
+        assertFalse(mManager.download(mPackFormat));
+        assertNull(mManager.getPackDir(mPackFormat));
+
+        // A later attempt that gets every image goes through.
+        mServer.setResponse("/pack/art_fog.png", createPng(16));
+        assertTrue(mManager.download(mPackFormat));
+        assertNotNull(mManager.getArtFile(mPackFormat, 741));
+    }
+}
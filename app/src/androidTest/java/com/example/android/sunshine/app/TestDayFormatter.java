@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+public class TestDayFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDayFormatter.class.getSimpleName();
+
+    private static final long HOUR_IN_MILLIS = 1000L * 60 * 60;
+    private static final long DAY_IN_MILLIS = HOUR_IN_MILLIS * 24;
+
+    // A forecast's worth of days, like the list binds.
+    private static final int FORECAST_DAYS = 14;
+    private static final int BENCHMARK_ROUNDS = 200;
+
+    // A DayFormatter whose idea of now the test controls.
+    private static class TestFormatter extends DayFormatter {
+        long mNow;
+
+        TestFormatter(Context context, long now) {
+            super(context);
+            mNow = now;
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    public void testLabelsMatchPreviousHelpers() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        DayFormatter formatter = new DayFormatter(mContext);
+        for (int i = -1; i < FORECAST_DAYS; i++) {
+            // Halfway through the day, so DST can't push it onto the next one.
+            long date = today + i * DAY_IN_MILLIS + DAY_IN_MILLIS / 2;
+            assertEquals(oldGetFriendlyDayString(mContext, date, true),
+                    formatter.getFriendlyDayString(date, true));
+            assertEquals(oldGetFriendlyDayString(mContext, date, false),
+                    formatter.getFriendlyDayString(date, false));
+            assertEquals(oldGetDayName(mContext, date), formatter.getDayName(date));
+            assertEquals(oldGetFormattedMonthDay(date), formatter.getFormattedMonthDay(date));
+        }
+    }
+
+    public void testLabelsChangeAtMidnight() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long tomorrow = WeatherContract.normalizeDate(today + DAY_IN_MILLIS + DAY_IN_MILLIS / 2);
+        TestFormatter formatter = new TestFormatter(mContext, tomorrow - 1);
+
+        assertEquals(mContext.getString(R.string.tomorrow), formatter.getDayName(tomorrow));
+        assertEquals(mContext.getString(R.string.today), formatter.getDayName(today));
+
+        formatter.mNow = tomorrow;
+        assertEquals("Error: a label from yesterday was kept past midnight",
+                mContext.getString(R.string.today), formatter.getDayName(tomorrow));
+        assertFalse(mContext.getString(R.string.today).equals(formatter.getDayName(today)));
+
+        // In Sao Paulo DST started at midnight on October 18th, 2015, so that day began at
+        // 01:00.  It still has to be tomorrow at 23:30 the evening before.
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Sao_Paulo"));
+            WeatherContract.resetTimeZone();
+            long october17 = 1445094000000L;      // 12:00 on the 17th
+            long october18 = 1445137200000L;      // 01:00 on the 18th, its first instant
+            formatter = new TestFormatter(mContext, october18 - HOUR_IN_MILLIS / 2);
+
+            assertEquals(mContext.getString(R.string.today), formatter.getDayName(october17));
+            assertEquals("Error: the day rolled over before midnight",
+                    mContext.getString(R.string.tomorrow), formatter.getDayName(october18));
+
+            formatter.mNow = october18;
+            assertEquals(mContext.getString(R.string.today), formatter.getDayName(october18));
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+            WeatherContract.resetTimeZone();
+        }
+    }
+
+    /*
+        Binds a forecast's worth of day labels over and over, the way scrolling does, and checks
+        that once the labels are cached it allocates nothing.  Also logs how long the same work
+        takes with the helpers DayFormatter replaced.
+     */
+    public void testDayLabelBenchmark() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long[] dates = new long[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            dates[i] = today + i * DAY_IN_MILLIS + DAY_IN_MILLIS / 2;
+        }
+        int length = 0;
+        // Fill the cache first.
+        for (long date : dates) {
+            length += Utility.getFriendlyDayString(mContext, date, true).length();
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int i = 0; i < FORECAST_DAYS; i++) {
+                length += Utility.getFriendlyDayString(mContext, dates[i], i == 0).length();
+            }
+        }
+        long nanos = (System.nanoTime() - start) / (BENCHMARK_ROUNDS * FORECAST_DAYS);
+        int allocations = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int i = 0; i < FORECAST_DAYS; i++) {
+                length += oldGetFriendlyDayString(mContext, dates[i], i == 0).length();
+            }
+        }
+        long oldNanos = (System.nanoTime() - start) / (BENCHMARK_ROUNDS * FORECAST_DAYS);
+        int oldAllocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, "getFriendlyDayString: " + nanos + "ns/call, " + allocations
+                + " allocations; previous helpers: " + oldNanos + "ns/call, " + oldAllocations
+                + " allocations (" + length + ")");
+        assertEquals("Error: cached day labels allocate", 0, allocations);
+    }
+
+    // The helpers as they were before DayFormatter, for comparison.
+
+    private static String oldGetFriendlyDayString(Context context, long dateInMillis,
+                                                  boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            String today = context.getString(R.string.today);
+            return context.getString(R.string.format_full_friendly_date, today,
+                    oldGetFormattedMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return oldGetDayName(context, dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private static String oldGetDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String oldGetFormattedMonthDay(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+}
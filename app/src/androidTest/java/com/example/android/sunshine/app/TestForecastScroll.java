@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Arrays;
+
+/*
+    Scrolls a long forecast list up and down and logs how long its frames took, along with how
+    long a bind takes now that the loader formats the rows.  Nothing is asserted about the
+    timings; compare the logged numbers across changes on the same device.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class TestForecastScroll extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestForecastScroll.class.getSimpleName();
+
+    private static final String[] LOCATIONS = {"99705", "94043", "10001", "60601"};
+    private static final int FORECAST_DAYS = 30;
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    private static final int SCROLL_PASSES = 4;
+    private static final int BIND_ROUNDS = 50;
+
+    private String mPreviousLocation;
+
+    public TestForecastScroll() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        context.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int l = 0; l < LOCATIONS.length; l++) {
+            ContentValues locationValues = new ContentValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATIONS[l]);
+            locationValues.put(LocationEntry.COLUMN_CITY_NAME, "Location " + l);
+            locationValues.put(LocationEntry.COLUMN_COORD_LAT, 10.0 * l);
+            locationValues.put(LocationEntry.COLUMN_COORD_LONG, -10.0 * l);
+            long locationRowId = ContentUris.parseId(context.getContentResolver()
+                    .insert(LocationEntry.CONTENT_URI, locationValues));
+
+            ContentValues[] weatherValues = new ContentValues[FORECAST_DAYS];
+            for (int i = 0; i < FORECAST_DAYS; i++) {
+                ContentValues values = new ContentValues();
+                values.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+                values.put(WeatherEntry.COLUMN_DATE, today + i * DAY_IN_MILLIS);
+                values.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+                values.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+                values.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+                values.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i % 10);
+                values.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i % 10);
+                values.put(WeatherEntry.COLUMN_SHORT_DESC, "Weather");
+                values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+                // Cycle through the conditions so rows use different icons.
+                values.put(WeatherEntry.COLUMN_WEATHER_ID, 200 + (i * 37) % 605);
+                weatherValues[i] = values;
+            }
+            context.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+        }
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String locationKey = context.getString(R.string.pref_location_key);
+        mPreviousLocation = prefs.getString(locationKey, null);
+        prefs.edit().putString(locationKey, LOCATIONS[0]).commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Context context = getInstrumentation().getTargetContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String locationKey = context.getString(R.string.pref_location_key);
+        if (mPreviousLocation == null) {
+            prefs.edit().remove(locationKey).commit();
+        } else {
+            prefs.edit().putString(locationKey, mPreviousLocation).commit();
+        }
+        super.tearDown();
+    }
+
+    public void testScrollFrameTimes() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // No Choreographer to time frames with.
+            return;
+        }
+
+        final RecyclerView recyclerView =
+                (RecyclerView) getActivity().findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(10000) {
+            @Override
+            protected boolean check() {
+                return recyclerView.getAdapter().getItemCount() >= FORECAST_DAYS / 2
+                        && recyclerView.getChildCount() > 0;
+            }
+        }.run();
+
+        final FrameRecorder recorder = new FrameRecorder();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.start();
+            }
+        });
+        for (int pass = 0; pass < SCROLL_PASSES; pass++) {
+            final int target = pass % 2 == 0 ? recyclerView.getAdapter().getItemCount() - 1 : 0;
+            runTestOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.smoothScrollToPosition(target);
+                }
+            });
+            new PollingCheck(10000) {
+                @Override
+                protected boolean check() {
+                    return recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE
+                            && recyclerView.findViewHolderForAdapterPosition(target) != null;
+                }
+            }.run();
+        }
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+            }
+        });
+
+        long[] frames = recorder.getFrameTimes();
+        int janky = 0;
+        for (long frame : frames) {
+            if (frame > 17 * 1000 * 1000) {
+                janky++;
+            }
+        }
+        Log.i(LOG_TAG, frames.length + " frames over " + recyclerView.getAdapter().getItemCount()
+                + " rows: p50 " + percentile(frames, 50) / 1000 + "us, p90 "
+                + percentile(frames, 90) / 1000 + "us, p99 " + percentile(frames, 99) / 1000
+                + "us, " + janky + " over 17ms");
+
+        final long[] bindNanos = new long[1];
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                ForecastAdapter adapter = (ForecastAdapter) recyclerView.getAdapter();
+                int count = adapter.getItemCount();
+                ForecastAdapter.ForecastAdapterViewHolder holder = adapter.onCreateViewHolder(
+                        recyclerView, adapter.getItemViewType(count - 1));
+                long start = System.nanoTime();
+                for (int round = 0; round < BIND_ROUNDS; round++) {
+                    for (int position = 1; position < count; position++) {
+                        adapter.onBindViewHolder(holder, position);
+                    }
+                }
+                bindNanos[0] = (System.nanoTime() - start) / (BIND_ROUNDS * (count - 1));
+            }
+        });
+        Log.i(LOG_TAG, "onBindViewHolder: " + bindNanos[0] / 1000 + "us per bind");
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    // Records the time between consecutive frames, in nanoseconds.  Only touch on the UI thread.
+    private static class FrameRecorder implements Choreographer.FrameCallback {
+        private long[] mFrames = new long[256];
+        private int mCount;
+        private long mLastFrameTime;
+        private boolean mRunning;
+
+        void start() {
+            mRunning = true;
+            mLastFrameTime = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mLastFrameTime != 0) {
+                if (mCount == mFrames.length) {
+                    mFrames = Arrays.copyOf(mFrames, mCount * 2);
+                }
+                mFrames[mCount++] = frameTimeNanos - mLastFrameTime;
+            }
+            mLastFrameTime = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        // Only call once recording has stopped.
+        long[] getFrameTimes() {
+            long[] frames = Arrays.copyOf(mFrames, mCount);
+            Arrays.sort(frames);
+            return frames;
+        }
+    }
+}
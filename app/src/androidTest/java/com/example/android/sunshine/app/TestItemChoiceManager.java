@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+
+import java.util.Arrays;
+
+public class TestItemChoiceManager extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestItemChoiceManager.class.getSimpleName();
+
+    // An adapter over a list of ids that counts how often its ids are looked up.
+    static class IdAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+            implements ItemChoiceManager.ItemIdLookup {
+        long[] mIds;
+        int mLookups;
+
+        IdAdapter(long[] ids) {
+            mIds = ids;
+            setHasStableIds(true);
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) {};
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.length;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds[position];
+        }
+
+        @Override
+        public int getPositionForItemId(long id) {
+            mLookups++;
+            for (int i = 0; i < mIds.length; i++) {
+                if (mIds[i] == id) {
+                    return i;
+                }
+            }
+            return RecyclerView.NO_POSITION;
+        }
+    }
+
+    private static long[] ids(int first, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    private static void check(ItemChoiceManager icm, RecyclerView.Adapter adapter, int position) {
+        icm.mCheckStates.put(position, true);
+        icm.mCheckedIdStates.put(adapter.getItemId(position), position);
+    }
+
+    public void testSelectionFollowsIdWhenRowsAreRemoved() {
+        IdAdapter adapter = new IdAdapter(ids(100, 30));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        check(icm, adapter, 25);
+
+        // A day goes by: the first two days drop off and two new ones are added at the end.
+        adapter.mIds = ids(102, 30);
+        adapter.notifyItemRangeRemoved(0, 2);
+
+        assertEquals(23, icm.getSelectedItemPosition());
+        assertTrue(icm.isItemChecked(23));
+        assertFalse(icm.isItemChecked(25));
+        assertEquals(1, adapter.mLookups);
+    }
+
+    public void testSelectionIsDroppedWithItsRow() {
+        IdAdapter adapter = new IdAdapter(ids(100, 30));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        check(icm, adapter, 0);
+
+        adapter.mIds = ids(101, 29);
+        adapter.notifyItemRemoved(0);
+
+        assertEquals(RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+        assertEquals(0, icm.mCheckedIdStates.size());
+    }
+
+    public void testUnmovedSelectionNeedsNoLookup() {
+        IdAdapter adapter = new IdAdapter(ids(100, 30));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        check(icm, adapter, 3);
+        check(icm, adapter, 7);
+
+        long[] grown = Arrays.copyOf(adapter.mIds, 32);
+        grown[30] = 500;
+        grown[31] = 501;
+        adapter.mIds = grown;
+        adapter.notifyItemRangeInserted(30, 2);
+
+        assertTrue(icm.isItemChecked(3));
+        assertTrue(icm.isItemChecked(7));
+        assertEquals(0, adapter.mLookups);
+    }
+}
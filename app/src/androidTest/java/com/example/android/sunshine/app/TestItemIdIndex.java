@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.HashMap;
+import java.util.Random;
+
+public class TestItemIdIndex extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestItemIdIndex.class.getSimpleName();
+
+    /*
+        Runs a long random mix of puts and removes against a HashMap, checking every lookup and,
+        at the end, that iterating by index sees exactly the map's entries.
+     */
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        ItemIdIndex index = new ItemIdIndex();
+        HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+
+        for (int i = 0; i < 20000; i++) {
+            long id = random.nextInt(500) - 50;
+            int op = random.nextInt(10);
+            if (op < 5) {
+                int position = random.nextInt(1000);
+                index.put(id, position);
+                expected.put(id, position);
+            } else if (op < 7) {
+                index.delete(id);
+                expected.remove(id);
+            } else if (op < 8 && index.size() > 0) {
+                int removed = random.nextInt(index.size());
+                expected.remove(index.keyAt(removed));
+                index.removeAt(removed);
+            }
+
+            Integer position = expected.get(id);
+            assertEquals(position == null ? -1 : (int) position, index.get(id, -1));
+            assertEquals(expected.size(), index.size());
+        }
+
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(expected.get(index.keyAt(i)).intValue(), index.valueAt(i));
+            assertEquals(i, index.indexOfKey(index.keyAt(i)));
+        }
+    }
+
+    public void testLookupsDoNotAllocate() {
+        ItemIdIndex index = new ItemIdIndex(64);
+        for (int i = 0; i < 64; i++) {
+            index.put(1000 + i, i);
+        }
+
+        int found = 0;
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < 10000; i++) {
+            found += index.get(990 + i % 80, -1) >= 0 ? 1 : 0;
+            index.setValueAt(i % 64, i % 64);
+        }
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        assertEquals(8000, found);
+        assertEquals("Error: looking up positions allocates", 0, allocations);
+    }
+}
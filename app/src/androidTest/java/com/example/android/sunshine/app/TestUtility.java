@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestUtility extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestUtility.class.getSimpleName();
+
+    /*
+        Spot checks the condition table at the edges of each range, including the codes the old
+        if/else chains got to first (761 is fog, not a storm) and the ones they left out.
+     */
+    public void testWeatherConditionLookups() {
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(200));
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(232));
+        assertEquals(R.drawable.ic_light_rain, Utility.getIconResourceForWeatherCondition(321));
+        assertEquals(R.drawable.ic_snow, Utility.getIconResourceForWeatherCondition(511));
+        assertEquals(R.drawable.ic_rain, Utility.getIconResourceForWeatherCondition(521));
+        assertEquals(R.drawable.ic_fog, Utility.getIconResourceForWeatherCondition(761));
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(781));
+        assertEquals(R.drawable.ic_cloudy, Utility.getIconResourceForWeatherCondition(804));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(233));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(-1));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(5000));
+
+        assertEquals(R.drawable.art_storm, Utility.getArtResourceForWeatherCondition(781));
+        assertEquals(R.drawable.art_light_clouds, Utility.getArtResourceForWeatherCondition(801));
+        assertEquals(-1, Utility.getArtResourceForWeatherCondition(900));
+
+        assertEquals(mContext.getString(R.string.condition_2xx),
+                Utility.getStringForWeatherCondition(mContext, 211));
+        assertEquals(mContext.getString(R.string.condition_962),
+                Utility.getStringForWeatherCondition(mContext, 962));
+        assertEquals(mContext.getString(R.string.condition_unknown, 521),
+                Utility.getStringForWeatherCondition(mContext, 521));
+        assertEquals(mContext.getString(R.string.condition_unknown, 5000),
+                Utility.getStringForWeatherCondition(mContext, 5000));
+
+        assertNotNull(Utility.getImageUrlForWeatherCondition(781));
+        assertFalse(Utility.getImageUrlForWeatherCondition(781)
+                .equals(Utility.getImageUrlForWeatherCondition(200)));
+        assertNull(Utility.getImageUrlForWeatherCondition(900));
+    }
+
+    /*
+        The art URLs are formatted once per art pack, so changing the pack has to throw them away.
+     */
+    public void testArtUrlsFollowArtPackPreference() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        final String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        String sunshine = mContext.getString(R.string.pref_art_pack_sunshine);
+        final String cuteDogs = mContext.getString(R.string.pref_art_pack_cute_dogs);
+        String previous = prefs.getString(artPackKey, sunshine);
+        try {
+            prefs.edit().putString(artPackKey, sunshine).commit();
+            assertEquals(String.format(sunshine, "light_rain"),
+                    Utility.getArtUrlForWeatherCondition(mContext, 300));
+            assertTrue(Utility.usingLocalGraphics(mContext));
+            assertNull(Utility.getArtUrlForWeatherCondition(mContext, 900));
+
+            prefs.edit().putString(artPackKey, cuteDogs).commit();
+
+            // Preference listeners are called on the main thread, after commit returns.
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    String url = Utility.getArtUrlForWeatherCondition(mContext, 803);
+                    // Once the pack has been downloaded it's served from disk instead.
+                    return String.format(cuteDogs, "clouds").equals(url)
+                            || (url != null && url.startsWith("file:") && url.endsWith("/clouds"));
+                }
+            }.run();
+            assertFalse(Utility.usingLocalGraphics(mContext));
+        } finally {
+            prefs.edit().putString(artPackKey, previous).commit();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+
+/*
+    Not a pass/fail test: logs how many rows per second WeatherProvider.bulkInsert writes for a
+    regular two week forecast, a long hourly-sized one and a large import.  Each batch is written
+    twice, once into an empty table (all inserts) and once over itself (all updates), since a
+    refresh of an existing forecast is the common case.  The same goes for applyBatch, which is
+    what the sync adapter writes through.
+ */
+public class TestBulkInsertBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    static ContentValues[] createWeatherValues(long locationRowId, int count) {
+        ContentValues[] values = new ContentValues[count];
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < count; i++, date += DAY_IN_MILLIS) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    public void testBulkInsertBenchmark() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        for (int rows : new int[] {14, 240, 5000}) {
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+            ContentValues[] values = createWeatherValues(locationRowId, rows);
+            long start = System.nanoTime();
+            int inserted = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+            long insertNanos = System.nanoTime() - start;
+            assertEquals(rows, inserted);
+
+            values = createWeatherValues(locationRowId, rows);
+            start = System.nanoTime();
+            int updated = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+            long updateNanos = System.nanoTime() - start;
+            assertEquals(rows, updated);
+
+            Log.i(LOG_TAG, rows + " rows: insert " + rowsPerSecond(rows, insertNanos)
+                    + " rows/s, refresh " + rowsPerSecond(rows, updateNanos) + " rows/s");
+        }
+    }
+
+    public void testApplyBatchBenchmark() throws Exception {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        for (int rows : new int[] {14, 240, 5000}) {
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+            ArrayList<ContentProviderOperation> operations =
+                    createInsertOperations(locationRowId, rows);
+            long start = System.nanoTime();
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            long insertNanos = System.nanoTime() - start;
+
+            operations = createInsertOperations(locationRowId, rows);
+            start = System.nanoTime();
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            long updateNanos = System.nanoTime() - start;
+
+            Log.i(LOG_TAG, rows + " rows in a batch: insert " + rowsPerSecond(rows, insertNanos)
+                    + " rows/s, refresh " + rowsPerSecond(rows, updateNanos) + " rows/s");
+        }
+    }
+
+    private static ArrayList<ContentProviderOperation> createInsertOperations(
+            long locationRowId, int rows) {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(rows);
+        for (ContentValues weatherValues : createWeatherValues(locationRowId, rows)) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(weatherValues)
+                    .build());
+        }
+        return operations;
+    }
+
+    private static long rowsPerSecond(int rows, long nanos) {
+        return nanos == 0 ? 0 : rows * 1000000000L / nanos;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestCurrentConditionsCache extends AndroidTestCase {
+
+    private CurrentConditionsCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mCache = CurrentConditionsCache.getInstance(mContext);
+        mCache.invalidate();
+    }
+
+    private void insertTodaysWeather() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, System.currentTimeMillis());
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+    }
+
+    public void testReadsTodaysConditions() {
+        insertTodaysWeather();
+
+        CurrentConditionsCache.Conditions conditions = mCache.get(TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: today's weather wasn't found", conditions);
+        assertEquals(321, conditions.weatherId);
+        assertEquals("Asteroids", conditions.description);
+        assertEquals(75.0, conditions.high);
+        assertEquals(65.0, conditions.low);
+        assertNotNull(conditions.formattedHigh);
+        assertNotNull(conditions.formattedLow);
+    }
+
+    /*
+        Repeated widget updates must not go to the database.  As in TestLocationCache, we check
+        that by deleting the rows behind the provider's back, which sends no change notification.
+     */
+    public void testCachedLookupDoesNotQuery() {
+        insertTodaysWeather();
+        CurrentConditionsCache.Conditions conditions = mCache.get(TestUtilities.TEST_LOCATION);
+        assertNotNull(conditions);
+        int queries = mCache.getQueryCount();
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+        db.close();
+
+        for (int i = 0; i < 10; i++) {
+            assertSame("Error: cached conditions were looked up again",
+                    conditions, mCache.get(TestUtilities.TEST_LOCATION));
+        }
+        assertEquals(queries, mCache.getQueryCount());
+        mCache.invalidate();
+    }
+
+    public void testPutConditionsAreReadWithoutQuery() {
+        int queries = mCache.getQueryCount();
+        mCache.put(TestUtilities.TEST_LOCATION, System.currentTimeMillis(), 800, "Clear", 80, 60);
+
+        CurrentConditionsCache.Conditions conditions = mCache.get(TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: the conditions put in the cache weren't found", conditions);
+        assertEquals(800, conditions.weatherId);
+        assertEquals("Clear", conditions.description);
+        assertEquals(queries, mCache.getQueryCount());
+        mCache.invalidate();
+    }
+
+    public void testProviderChangeInvalidates() {
+        insertTodaysWeather();
+        assertNotNull(mCache.get(TestUtilities.TEST_LOCATION));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        // The change notification is delivered asynchronously.
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mCache.get(TestUtilities.TEST_LOCATION) == null;
+            }
+        }.run();
+    }
+}
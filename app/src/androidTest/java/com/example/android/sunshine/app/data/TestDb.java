@@ -234,4 +234,90 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    // The projections the forecast list and the detail widget query the join with.
+    // These mirror ForecastFragment.FORECAST_COLUMNS and DetailWidgetRemoteViewsService.
+    private static final String[] FORECAST_LIST_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String[] WIDGET_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    /*
+        Makes sure the queries the UI runs against the weather/location join are answered from
+        the indexes WeatherDbHelper creates, rather than by scanning either table.  If this fails
+        after a schema or projection change, update the indexes to match the new queries.
+     */
+    public void testQueryPlansUseIndexes() {
+        insertLocation();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        String dateAscending = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        String plan = explainQueryPlan(db, FORECAST_LIST_COLUMNS,
+                WeatherProvider.sLocationSettingWithStartDateSelection, dateAscending);
+        assertCoveredByIndexes("forecast list", plan);
+
+        plan = explainQueryPlan(db, WIDGET_COLUMNS,
+                WeatherProvider.sLocationSettingWithStartDateSelection, dateAscending);
+        assertCoveredByIndexes("detail widget", plan);
+
+        // The detail view reads one day, so it only needs to find the row through an index.
+        plan = explainQueryPlan(db, null,
+                WeatherProvider.sLocationSettingAndDaySelection, null);
+        assertFalse("Error: the single day query scans a table: " + plan, scansTable(plan));
+
+        // But the date is checked in the index, not by reading every row of the location.
+        plan = explainQueryPlan(db, WIDGET_COLUMNS,
+                WeatherProvider.sLocationSettingAndDaySelection, null);
+        assertCoveredByIndexes("single day", plan);
+
+        db.close();
+    }
+
+    private static void assertCoveredByIndexes(String query, String plan) {
+        assertFalse("Error: the " + query + " query scans a table: " + plan, scansTable(plan));
+        assertTrue("Error: the " + query + " query doesn't use " +
+                        WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE + " as a covering index: " + plan,
+                plan.contains("COVERING INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertFalse("Error: the " + query + " query sorts its results itself: " + plan,
+                plan.contains("TEMP B-TREE"));
+    }
+
+    // Older SQLite versions say "SCAN TABLE weather", newer ones just "SCAN weather".
+    private static boolean scansTable(String plan) {
+        return plan.contains("SCAN TABLE ") ||
+                plan.contains("SCAN " + WeatherContract.WeatherEntry.TABLE_NAME) ||
+                plan.contains("SCAN " + WeatherContract.LocationEntry.TABLE_NAME);
+    }
+
+    // Returns the detail column of every EXPLAIN QUERY PLAN row, one per line.
+    private static String explainQueryPlan(SQLiteDatabase db, String[] projection,
+                                           String selection, String sortOrder) {
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                projection, selection, null, null, sortOrder, null);
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql,
+                new String[] {TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)});
+        StringBuilder plan = new StringBuilder();
+        int detailIndex = c.getColumnIndex("detail");
+        while (c.moveToNext()) {
+            plan.append(c.getString(detailIndex)).append('\n');
+        }
+        c.close();
+        return plan.toString();
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/*
+    Opens databases the way older versions of the app left them and checks that WeatherDbHelper
+    brings them up to date without losing their rows.
+
+    The schemas below are frozen copies of what each version's onCreate ran.  Don't change them
+    when the schema changes; add the new version instead.
+ */
+public class TestDbUpgrade extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbUpgrade.class.getSimpleName();
+
+    private static final String[] SCHEMA_VERSION_2 = {
+            "CREATE TABLE location (" +
+                    "_id INTEGER PRIMARY KEY," +
+                    "location_setting TEXT UNIQUE NOT NULL, " +
+                    "city_name TEXT NOT NULL, " +
+                    "coord_lat REAL NOT NULL, " +
+                    "coord_long REAL NOT NULL  );",
+            "CREATE TABLE weather (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "location_id INTEGER NOT NULL, " +
+                    "date INTEGER NOT NULL, " +
+                    "short_desc TEXT NOT NULL, " +
+                    "weather_id INTEGER NOT NULL," +
+                    "min REAL NOT NULL, " +
+                    "max REAL NOT NULL, " +
+                    "humidity REAL NOT NULL, " +
+                    "pressure REAL NOT NULL, " +
+                    "wind REAL NOT NULL, " +
+                    "degrees REAL NOT NULL, " +
+                    " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                    " UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+    };
+
+    private static final String[] SCHEMA_VERSION_3 = {
+            SCHEMA_VERSION_2[0],
+            SCHEMA_VERSION_2[1],
+            "CREATE INDEX IF NOT EXISTS weather_location_date_idx ON weather (" +
+                    "location_id, date, weather_id, short_desc, max, min);"
+    };
+
+    // Since we want each test to start with a clean slate
+    void deleteTheDatabase() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void setUp() {
+        deleteTheDatabase();
+    }
+
+    /*
+        Creates weather.db with the given schema and user_version, as if an older version of
+        the app had created it.
+     */
+    private SQLiteDatabase createDatabaseAtVersion(int version, String[] schema) {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        for (String statement : schema) {
+            db.execSQL(statement);
+        }
+        db.setVersion(version);
+        return db;
+    }
+
+    public void testUpgradeFromVersion2KeepsRows() {
+        SQLiteDatabase db = createDatabaseAtVersion(2, SCHEMA_VERSION_2);
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, locationValues);
+        assertTrue("Error: Failure to insert North Pole Location Values", locationRowId != -1);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        long date = WeatherContract.normalizeDate(
+                weatherValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+        long weatherRowId = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+        assertTrue("Error: Failure to insert Weather Values", weatherRowId != -1);
+        db.close();
+
+        db = new WeatherDbHelper(mContext).getReadableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: the location didn't survive the upgrade",
+                cursor, locationValues);
+        cursor.close();
+
+        cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertTrue("Error: the forecast didn't survive the upgrade", cursor.moveToFirst());
+        assertEquals(weatherRowId,
+                cursor.getLong(cursor.getColumnIndex(WeatherContract.WeatherEntry._ID)));
+        TestUtilities.validateCurrentRecord("Error: the forecast changed during the upgrade",
+                cursor, weatherValues);
+        assertEquals("Error: the upgrade didn't fill in the epoch day",
+                WeatherContract.toEpochDay(date), cursor.getLong(
+                        cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_EPOCH_DAY)));
+        cursor.close();
+        db.close();
+    }
+
+    /*
+        An upgraded database has to end up with the same tables, columns and indexes as one
+        created from scratch, or queries tuned on fresh installs will behave differently.
+     */
+    public void testUpgradedSchemaMatchesFreshInstall() {
+        createDatabaseAtVersion(2, SCHEMA_VERSION_2).close();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        ArrayList<String> upgraded = describeSchema(db);
+        db.close();
+
+        deleteTheDatabase();
+        db = new WeatherDbHelper(mContext).getReadableDatabase();
+        ArrayList<String> fresh = describeSchema(db);
+        db.close();
+
+        assertEquals("Error: the upgraded schema differs from a fresh install", fresh, upgraded);
+    }
+
+    public void testUpgradeFromVersion3MatchesFreshInstall() {
+        createDatabaseAtVersion(3, SCHEMA_VERSION_3).close();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        ArrayList<String> upgraded = describeSchema(db);
+        db.close();
+
+        deleteTheDatabase();
+        db = new WeatherDbHelper(mContext).getReadableDatabase();
+        ArrayList<String> fresh = describeSchema(db);
+        db.close();
+
+        assertEquals("Error: the upgraded schema differs from a fresh install", fresh, upgraded);
+    }
+
+    public void testUpgradeFromUnsupportedVersionRecreates() {
+        SQLiteDatabase db = createDatabaseAtVersion(1, SCHEMA_VERSION_2);
+        db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        db.close();
+
+        db = new WeatherDbHelper(mContext).getReadableDatabase();
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertEquals("Error: a database older than OLDEST_MIGRATABLE_VERSION was kept",
+                0, cursor.getCount());
+        cursor.close();
+
+        final HashSet<String> tableNameHashSet = new HashSet<String>();
+        tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table'", null);
+        while (cursor.moveToNext()) {
+            tableNameHashSet.remove(cursor.getString(0));
+        }
+        cursor.close();
+        assertTrue("Error: the recreated database is missing tables", tableNameHashSet.isEmpty());
+        db.close();
+    }
+
+    // One line per index and per column of every table, in a stable order.
+    private static ArrayList<String> describeSchema(SQLiteDatabase db) {
+        ArrayList<String> schema = new ArrayList<String>();
+        Cursor master = db.rawQuery("SELECT type, name FROM sqlite_master " +
+                "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata' " +
+                "ORDER BY type, name", null);
+        while (master.moveToNext()) {
+            String type = master.getString(0);
+            String name = master.getString(1);
+            String pragma = "table".equals(type) ? "table_info" : "index_info";
+            Cursor columns = db.rawQuery("PRAGMA " + pragma + "(" + name + ")", null);
+            int nameIndex = columns.getColumnIndex("name");
+            while (columns.moveToNext()) {
+                schema.add(type + " " + name + ": " + columns.getString(nameIndex));
+            }
+            columns.close();
+        }
+        master.close();
+        return schema;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestLocationCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLocationCache.class.getSimpleName();
+
+    private LocationCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mCache = LocationCache.getInstance(mContext);
+        mCache.invalidate();
+    }
+
+    public void testGetOrInsertStoresLocation() {
+        assertNull(mCache.get(TestUtilities.TEST_LOCATION));
+
+        LocationCache.Location inserted = mCache.getOrInsert(TestUtilities.TEST_LOCATION,
+                "North Pole", 64.7488, -147.353);
+        assertTrue(inserted.id != -1);
+
+        mCache.invalidate();
+        LocationCache.Location queried = mCache.get(TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: the inserted location wasn't stored", queried);
+        assertEquals(inserted.id, queried.id);
+        assertEquals("North Pole", queried.cityName);
+        assertEquals(64.7488, queried.latitude);
+        assertEquals(-147.353, queried.longitude);
+
+        assertSame(queried, mCache.get(queried.id));
+        assertEquals(1, mCache.getAll().size());
+    }
+
+    /*
+        Once a location is cached, looking it up again must not go to the database.  We check that
+        by deleting the row behind the provider's back, which sends no change notification.
+     */
+    public void testCachedLookupDoesNotQuery() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        LocationCache.Location location = mCache.get(TestUtilities.TEST_LOCATION);
+        assertNotNull(location);
+        assertEquals(locationRowId, location.id);
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        db.delete(LocationEntry.TABLE_NAME, null, null);
+        db.close();
+
+        assertSame("Error: a cached location was looked up again",
+                location, mCache.get(TestUtilities.TEST_LOCATION));
+        mCache.invalidate();
+    }
+
+    public void testProviderChangeInvalidates() {
+        TestUtilities.insertNorthPoleLocationValues(mContext);
+        assertNotNull(mCache.get(TestUtilities.TEST_LOCATION));
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        // The change notification is delivered asynchronously.
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mCache.get(TestUtilities.TEST_LOCATION) == null;
+            }
+        }.run();
+    }
+}
@@ -16,6 +16,8 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -30,6 +32,9 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+import java.util.TimeZone;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -287,6 +292,40 @@ public class TestProvider extends AndroidTestCase {
     }
 
 
+    /*
+        Rows keep the epoch day of the zone they were written in, so after the user moves west a
+        day has to be found by its stored date, not by the day that date falls on now.
+     */
+    public void testDayLookupSurvivesTimeZoneChange() {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/London"));
+            WeatherContract.resetTimeZone();
+            long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            long date = WeatherContract.normalizeDate(1419033600000L);  // December 20th, 2014
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+            WeatherContract.resetTimeZone();
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, date),
+                    null,
+                    null,
+                    null,
+                    null
+            );
+            assertTrue("Error: the day wasn't found after the time zone changed",
+                    cursor.moveToFirst());
+            assertEquals(date, cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)));
+            cursor.close();
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+            WeatherContract.resetTimeZone();
+        }
+    }
+
     // Make sure we can still delete after adding/updating stuff
     //
     // Student: Uncomment this test after you have completed writing the insert functionality
@@ -512,4 +551,115 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Re-inserting a day that is already stored should update its row in place rather than
+        replace it, so the _id of each day survives a refresh.
+     */
+    public void testBulkInsertKeepsRowIds() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        ContentValues[] firstSync = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, firstSync);
+        long[] firstIds = queryWeatherIds();
+
+        ContentValues[] secondSync = createBulkInsertWeatherValues(locationRowId);
+        for (ContentValues weatherValues : secondSync) {
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        }
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, secondSync);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        long[] secondIds = queryWeatherIds();
+        assertEquals("Error: re-inserting the same days changed the number of rows",
+                firstIds.length, secondIds.length);
+        for (int i = 0; i < firstIds.length; i++) {
+            assertEquals("Error: the _id of day " + i + " changed on re-insert",
+                    firstIds[i], secondIds[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testBulkInsertKeepsRowIds.  Error validating WeatherEntry " + i,
+                    cursor, secondSync[i]);
+        }
+        cursor.close();
+    }
+
+    private long[] queryWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[] {WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+
+    /*
+        A batch that writes one location's days must notify that location's weather URI, and
+        leave observers of other locations alone.
+     */
+    public void testApplyBatchNotifiesAffectedLocation() throws Exception {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (ContentValues weatherValues : createBulkInsertWeatherValues(locationRowId)) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(weatherValues)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[] {Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, locationObserver);
+        TestUtilities.TestContentObserver otherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation("elsewhere"), true, otherObserver);
+
+        ContentProviderResult[] results =
+                mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals(operations.size(), results.length);
+
+        locationObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherObserver);
+        assertFalse("Error: a location the batch didn't touch was notified",
+                otherObserver.mContentChanged);
+        otherObserver.mHT.quit();
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // Writing the same days again updates them in place, as bulkInsert does.
+        long[] ids = queryWeatherIds();
+        results = mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                operations);
+        assertEquals(WeatherEntry.CONTENT_URI, results[0].uri);
+        long[] refreshedIds = queryWeatherIds();
+        assertEquals(ids.length, refreshedIds.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Error: the _id of day " + i + " changed in a batch", ids[i],
+                    refreshedIds[i]);
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/*
+    Runs the forecast list query in a loop while another thread keeps bulk inserting, once with
+    the rollback journal and once with write-ahead logging, and logs the p50/p99 query latency of
+    both.  The only thing it asserts is that the queries keep seeing whole forecasts.
+ */
+public class TestWalStress extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWalStress.class.getSimpleName();
+
+    private static final int BULK_INSERTS = 50;
+    private static final int ROWS_PER_BULK_INSERT = 240;
+
+    void deleteTheDatabase() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void setUp() {
+        deleteTheDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTheDatabase();
+        super.tearDown();
+    }
+
+    public void testQueryLatencyDuringBulkInserts() throws Exception {
+        long[] journal = measureQueryLatencies(false);
+        long[] wal = measureQueryLatencies(true);
+
+        Log.i(LOG_TAG, "rollback journal: " + journal.length + " queries, p50 "
+                + percentile(journal, 50) / 1000 + "us, p99 " + percentile(journal, 99) / 1000
+                + "us; WAL: " + wal.length + " queries, p50 " + percentile(wal, 50) / 1000
+                + "us, p99 " + percentile(wal, 99) / 1000 + "us");
+    }
+
+    /*
+        Returns the sorted latencies, in nanoseconds, of every query that ran while the writer
+        thread was busy.
+     */
+    private long[] measureQueryLatencies(boolean writeAheadLogging) throws InterruptedException {
+        deleteTheDatabase();
+        final WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, writeAheadLogging);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue("Error: Failure to insert North Pole Location Values", locationRowId != -1);
+        final ContentValues[] values =
+                TestBulkInsertBenchmark.createWeatherValues(locationRowId, ROWS_PER_BULK_INSERT);
+        insertAll(db, values);
+
+        // The same join the provider runs for the forecast list.
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC", null);
+        String[] selectionArgs = new String[] {TestUtilities.TEST_LOCATION, "0"};
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < BULK_INSERTS; i++) {
+                    insertAll(db, values);
+                    dbHelper.checkpointAfterBulkInsert(db);
+                }
+            }
+        };
+        writer.start();
+
+        long[] latencies = new long[1024];
+        int queries = 0;
+        while (writer.isAlive()) {
+            long start = System.nanoTime();
+            Cursor cursor = db.rawQuery(sql, selectionArgs);
+            int count = cursor.getCount();
+            cursor.close();
+            if (queries == latencies.length) {
+                latencies = Arrays.copyOf(latencies, queries * 2);
+            }
+            latencies[queries++] = System.nanoTime() - start;
+            assertEquals("Error: a query saw a partly written forecast",
+                    ROWS_PER_BULK_INSERT, count);
+        }
+        writer.join();
+        dbHelper.close();
+
+        latencies = Arrays.copyOf(latencies, queries);
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    // Writes the rows in one transaction, like WeatherProvider.bulkInsert.
+    private static void insertAll(SQLiteDatabase db, ContentValues[] values) {
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+}
@@ -16,7 +16,13 @@
 package com.example.android.sunshine.app.data;
 
 import android.net.Uri;
+import android.os.Debug;
 import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.TimeZone;
 
 /*
     Students: This is NOT a complete test for the WeatherContract --- just for the functions
@@ -24,6 +30,8 @@ import android.test.AndroidTestCase;
  */
 public class TestWeatherContract extends AndroidTestCase {
 
+    public static final String LOG_TAG = TestWeatherContract.class.getSimpleName();
+
     // intentionally includes a slash to make sure Uri is getting quoted correctly
     private static final String TEST_WEATHER_LOCATION = "/North Pole";
     private static final long TEST_WEATHER_DATE = 1419033600L;  // December 20th, 2014
@@ -42,4 +50,108 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    // Zones with DST on both hemispheres, half-hour offsets and DST shifts, offsets far from
+    // UTC on either side, and two that skip midnight when DST starts.
+    private static final String[] TEST_TIME_ZONES = {
+            "UTC",
+            "America/Los_Angeles",
+            "Europe/London",
+            "Australia/Sydney",
+            "Australia/Lord_Howe",
+            "Asia/Kolkata",
+            "Pacific/Kiritimati",
+            "Pacific/Pago_Pago",
+            "America/Sao_Paulo",
+            "America/Santiago"
+    };
+
+    private static final long HOUR_IN_MILLIS = 1000L * 60 * 60;
+
+    private static final int BENCHMARK_ITERATIONS = 100000;
+
+    /*
+        Checks normalizeDate against java.util.Calendar, hour by hour through 2015 and 2016, in
+        a set of time zones picked for their awkward DST rules.
+     */
+    public void testNormalizeDateAcrossTimeZones() {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            for (String id : TEST_TIME_ZONES) {
+                TimeZone timeZone = TimeZone.getTimeZone(id);
+                TimeZone.setDefault(timeZone);
+                WeatherContract.resetTimeZone();
+
+                Calendar calendar = Calendar.getInstance(timeZone);
+                calendar.clear();
+                calendar.set(2015, Calendar.JANUARY, 1);
+                long end = calendar.getTimeInMillis() + 2 * 366 * 24 * HOUR_IN_MILLIS;
+                for (long date = calendar.getTimeInMillis(); date < end; date += HOUR_IN_MILLIS) {
+                    calendar.setTimeInMillis(date);
+                    calendar.set(Calendar.HOUR_OF_DAY, 0);
+                    calendar.set(Calendar.MINUTE, 0);
+                    calendar.set(Calendar.SECOND, 0);
+                    calendar.set(Calendar.MILLISECOND, 0);
+                    long startOfDay = calendar.getTimeInMillis();
+
+                    long normalized = WeatherContract.normalizeDate(date);
+                    assertEquals("Error: " + id + " normalized " + date + " wrong",
+                            startOfDay, normalized);
+                    assertEquals("Error: " + id + " normalizing twice moved " + date,
+                            normalized, WeatherContract.normalizeDate(normalized));
+                    assertEquals("Error: " + id + " put " + date + " on the wrong day",
+                            WeatherContract.toEpochDay(startOfDay),
+                            WeatherContract.toEpochDay(date));
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+            WeatherContract.resetTimeZone();
+        }
+    }
+
+    /*
+        normalizeDate runs for every row the provider writes, so it must not allocate.  Also
+        logs its speed next to the android.text.format.Time version it replaced.
+     */
+    @SuppressWarnings("deprecation")
+    public void testNormalizeDateBenchmark() {
+        long date = TEST_WEATHER_DATE;
+        // Warm up, and make sure the time zone is cached before we count.
+        for (int i = 0; i < 1000; i++) {
+            date += WeatherContract.normalizeDate(date) & 1;
+            date += normalizeDateWithTime(date) & 1;
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            date += WeatherContract.normalizeDate(date + i * HOUR_IN_MILLIS) & 1;
+        }
+        long nanos = (System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+        int allocations = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            date += normalizeDateWithTime(date + i * HOUR_IN_MILLIS) & 1;
+        }
+        long timeNanos = (System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+        int timeAllocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, "normalizeDate: " + nanos + "ns and " + allocations + " allocations for "
+                + BENCHMARK_ITERATIONS + " calls; with Time: " + timeNanos + "ns and "
+                + timeAllocations + " allocations (" + date + ")");
+        assertEquals("Error: normalizeDate allocates", 0, allocations);
+    }
+
+    // The previous implementation, for comparison.
+    private static long normalizeDateWithTime(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
 }
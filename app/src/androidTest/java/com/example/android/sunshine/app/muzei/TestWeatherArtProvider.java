@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+/*
+    Stages photos served from the device itself, and reads them back the way Muzei does.
+ */
+public class TestWeatherArtProvider extends AndroidTestCase {
+
+    private static final int SIZE = 100;
+    // A portrait screen, for a landscape photo.
+    private static final int SCREEN_WIDTH = 90;
+    private static final int SCREEN_HEIGHT = 160;
+
+    private LocalHttpServer mServer;
+    private Uri mStagedUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalHttpServer();
+        Bitmap bitmap = Bitmap.createBitmap(SIZE * 8, SIZE * 6, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        mServer.setResponse("/photo.png", out.toByteArray());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        if (mStagedUri != null) {
+            new File(new File(mContext.getFilesDir(), "muzei"), mStagedUri.getLastPathSegment())
+                    .delete();
+        }
+        super.tearDown();
+    }
+
+    public void testStagesScaledDownCopyOnce() throws Exception {
+        // The port differs between runs, so this never finds an earlier run's copy.
+        String url = mServer.getUrl("/photo.png");
+        mStagedUri = WeatherArtProvider.stage(mContext, url, SCREEN_WIDTH, SCREEN_HEIGHT);
+        assertNotNull("Error: the photo wasn't staged", mStagedUri);
+        assertEquals("content", mStagedUri.getScheme());
+        assertTrue(WeatherArtProvider.isStaged(mContext, mStagedUri));
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = mContext.getContentResolver().openInputStream(mStagedUri);
+        BitmapFactory.decodeStream(in, null, options);
+        in.close();
+        // Cropped to exactly the screen, not just decoded no smaller than it.
+        assertEquals(SCREEN_WIDTH, options.outWidth);
+        assertEquals(SCREEN_HEIGHT, options.outHeight);
+
+        int requests = mServer.getRequestCount();
+        assertEquals(mStagedUri,
+                WeatherArtProvider.stage(mContext, url, SCREEN_WIDTH, SCREEN_HEIGHT));
+        assertEquals("Error: a staged photo was downloaded again",
+                requests, mServer.getRequestCount());
+    }
+
+    public void testFailedDownloadStagesNothing() {
+        assertNull(WeatherArtProvider.stage(mContext, mServer.getUrl("/missing.png"),
+                SCREEN_WIDTH, SCREEN_HEIGHT));
+    }
+
+    public void testPruneKeepsOnlyCurrentPhoto() {
+        String url = mServer.getUrl("/photo.png");
+        Uri previous = WeatherArtProvider.stage(mContext, url, SCREEN_HEIGHT, SCREEN_WIDTH);
+        mStagedUri = WeatherArtProvider.stage(mContext, url, SCREEN_WIDTH, SCREEN_HEIGHT);
+        assertNotNull(previous);
+        assertNotNull(mStagedUri);
+        assertFalse(previous.equals(mStagedUri));
+
+        WeatherArtProvider.prune(mContext, mStagedUri);
+        assertFalse(WeatherArtProvider.isStaged(mContext, previous));
+        assertTrue(WeatherArtProvider.isStaged(mContext, mStagedUri));
+    }
+
+    public void testServesOnlyStagedPhotos() {
+        Uri outside = new Uri.Builder()
+                .scheme("content")
+                .authority(WeatherArtProvider.AUTHORITY)
+                .appendEncodedPath("..%2Fshared_prefs%2Fmuzei_source.xml")
+                .build();
+        try {
+            mContext.getContentResolver().openInputStream(outside);
+            fail("Error: the provider served a file that isn't a staged photo");
+        } catch (FileNotFoundException expected) {
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/*
+    Checks that the streaming forecast parser produces exactly the rows the org.json parser does,
+    and compares the two paths on recorded OpenWeatherMap payloads.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    private static final int TEST_JULIAN_DAY = 2457012; // December 20th, 2014
+
+    // A single day as recorded from api.openweathermap.org/data/2.5/forecast/daily
+    private static final String RECORDED_DAY =
+            "{\"dt\":1419076800,\"temp\":{\"day\":-12.53,\"min\":-17.96,\"max\":-12.53," +
+            "\"night\":-17.96,\"eve\":-15.82,\"morn\":-12.53},\"pressure\":994.12," +
+            "\"humidity\":78,\"weather\":[{\"id\":600,\"main\":\"Snow\"," +
+            "\"description\":\"light snow\",\"icon\":\"13d\"}],\"speed\":1.36,\"deg\":241," +
+            "\"clouds\":92,\"snow\":0.39}";
+
+    private static final String RECORDED_CITY =
+            "{\"id\":5861897,\"name\":\"North Pole\",\"coord\":{\"lon\":-147.353,\"lat\":64.7488}," +
+            "\"country\":\"US\",\"population\":0}";
+
+    private static final int BENCHMARK_ITERATIONS = 20;
+
+    static String buildPayload(int days) {
+        StringBuilder payload = new StringBuilder(RECORDED_DAY.length() * days + 256);
+        payload.append("{\"city\":").append(RECORDED_CITY)
+                .append(",\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(days)
+                .append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) payload.append(',');
+            payload.append(RECORDED_DAY);
+        }
+        return payload.append("]}").toString();
+    }
+
+    public void testStreamingMatchesTreeParse() throws Exception {
+        String payload = buildPayload(14);
+
+        ForecastJsonParser.Forecast streamed = ForecastJsonParser.parse(
+                new ByteArrayInputStream(payload.getBytes("UTF-8")), TEST_JULIAN_DAY);
+        ForecastJsonParser.Forecast tree = ForecastJsonParser.parse(payload, TEST_JULIAN_DAY);
+
+        assertEquals(HttpURLConnection.HTTP_OK, streamed.messageCode);
+        assertEquals(tree.cityName, streamed.cityName);
+        assertEquals(tree.cityLatitude, streamed.cityLatitude);
+        assertEquals(tree.cityLongitude, streamed.cityLongitude);
+        assertEquals(14, streamed.days.size());
+        for (int i = 0; i < tree.days.size(); i++) {
+            ContentValues expected = tree.days.get(i);
+            ContentValues actual = streamed.days.get(i);
+            assertEquals("Error: day " + i + " differs between the streaming and tree parsers",
+                    expected, actual);
+        }
+    }
+
+    public void testErrorCodeIsReported() throws Exception {
+        String payload = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+        ForecastJsonParser.Forecast forecast = ForecastJsonParser.parse(
+                new ByteArrayInputStream(payload.getBytes("UTF-8")), TEST_JULIAN_DAY);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.messageCode);
+        assertTrue(forecast.days.isEmpty());
+    }
+
+    public void testMalformedPayloadThrowsJsonException() throws Exception {
+        String payload = buildPayload(2).replace("\"max\":-12.53,", "");
+        try {
+            ForecastJsonParser.parse(
+                    new ByteArrayInputStream(payload.getBytes("UTF-8")), TEST_JULIAN_DAY);
+            fail("Error: a day without a max temperature should not parse");
+        } catch (JSONException expected) {
+        }
+    }
+
+    /*
+        Not a pass/fail test: logs time and allocated bytes per parse for the old buffered path and
+        the streaming path on 14, 16 day and long hourly-sized payloads.
+     */
+    @SuppressWarnings("deprecation")
+    public void testParserBenchmark() throws Exception {
+        for (int days : new int[] {14, 16, 240}) {
+            byte[] payload = buildPayload(days).getBytes("UTF-8");
+
+            // Warm up both paths so the first measured run isn't paying for class loading.
+            parseBuffered(payload);
+            ForecastJsonParser.parse(new ByteArrayInputStream(payload), TEST_JULIAN_DAY);
+
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                parseBuffered(payload);
+            }
+            long bufferedNanos = (System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+            long bufferedBytes = Debug.getThreadAllocSize() / BENCHMARK_ITERATIONS;
+
+            Debug.resetThreadAllocSize();
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                ForecastJsonParser.parse(new ByteArrayInputStream(payload), TEST_JULIAN_DAY);
+            }
+            long streamedNanos = (System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+            long streamedBytes = Debug.getThreadAllocSize() / BENCHMARK_ITERATIONS;
+            Debug.stopAllocCounting();
+
+            Log.i(LOG_TAG, days + " days: buffered " + bufferedNanos / 1000 + "us/"
+                    + bufferedBytes + "B, streamed " + streamedNanos / 1000 + "us/"
+                    + streamedBytes + "B");
+        }
+    }
+
+    // The pre-streaming path: read the whole response into a String, then build the tree.
+    private static ForecastJsonParser.Forecast parseBuffered(byte[] payload) throws Exception {
+        InputStream inputStream = new ByteArrayInputStream(payload);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        reader.close();
+        return ForecastJsonParser.parse(buffer.toString(), TEST_JULIAN_DAY);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestPostSyncFanOut extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final String PREFS_NAME = "test_post_sync_fan_out";
+
+    private SharedPreferences mPrefs;
+    private final List<PostSyncFanOut> mFanOuts = new ArrayList<PostSyncFanOut>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (PostSyncFanOut fanOut : mFanOuts) {
+            fanOut.shutdown();
+        }
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    private PostSyncFanOut createFanOut(List<PostSyncFanOut.Consumer> consumers) {
+        PostSyncFanOut fanOut = new PostSyncFanOut(mPrefs, consumers);
+        mFanOuts.add(fanOut);
+        return fanOut;
+    }
+
+    private static ForecastSnapshot buildSnapshot(String location, double todaysHigh,
+                                                  double lastHigh) {
+        List<ContentValues> days = new ArrayList<ContentValues>();
+        for (int i = 0; i < 3; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_DATE, TEST_DATE + i * DAY_IN_MILLIS);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, i == 0 ? todaysHigh : i == 2 ? lastHigh : 75);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 65);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            days.add(day);
+        }
+        return new ForecastSnapshot(location, true, days);
+    }
+
+    // Counts what it's handed, and can be made to wait for the others or to fail.
+    static class FakeConsumer implements PostSyncFanOut.Consumer {
+        final String mName;
+        final AtomicInteger mConsumed = new AtomicInteger();
+        CountDownLatch mStartTogether;
+        boolean mFail;
+
+        FakeConsumer(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public boolean hasChanged(ForecastSnapshot previous, ForecastSnapshot snapshot) {
+            return "today".equals(mName)
+                    ? !snapshot.sameTodayAs(previous) : !snapshot.sameDaysAs(previous);
+        }
+
+        @Override
+        public void consume(ForecastSnapshot snapshot) {
+            mConsumed.incrementAndGet();
+            if (mStartTogether != null) {
+                mStartTogether.countDown();
+                try {
+                    // Only returns early if every consumer is running at once.
+                    mStartTogether.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (mFail) {
+                throw new IllegalStateException("Consumer failed on purpose");
+            }
+        }
+    }
+
+    public void testConsumersRunInParallel() {
+        CountDownLatch startTogether = new CountDownLatch(3);
+        List<PostSyncFanOut.Consumer> consumers = new ArrayList<PostSyncFanOut.Consumer>();
+        for (String name : Arrays.asList("today", "days", "more days")) {
+            FakeConsumer consumer = new FakeConsumer(name);
+            consumer.mStartTogether = startTogether;
+            consumers.add(consumer);
+        }
+        PostSyncFanOut fanOut = createFanOut(consumers);
+
+        long start = System.currentTimeMillis();
+        List<PostSyncFanOut.Timing> timings = fanOut.dispatch(buildSnapshot(LOCATION, 75, 75));
+        assertTrue("Consumers waited on each other",
+                System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(5));
+        assertEquals(3, timings.size());
+        for (PostSyncFanOut.Timing timing : timings) {
+            assertFalse(timing.skipped);
+        }
+        assertEquals(timings, fanOut.getLastTimings());
+    }
+
+    public void testUnchangedSlicesAreSkipped() {
+        FakeConsumer today = new FakeConsumer("today");
+        FakeConsumer days = new FakeConsumer("days");
+        PostSyncFanOut fanOut = createFanOut(
+                Arrays.<PostSyncFanOut.Consumer>asList(today, days));
+
+        fanOut.dispatch(buildSnapshot(LOCATION, 75, 75));
+        assertEquals(1, today.mConsumed.get());
+        assertEquals(1, days.mConsumed.get());
+
+        // Nothing changed.
+        List<PostSyncFanOut.Timing> timings = fanOut.dispatch(buildSnapshot(LOCATION, 75, 75));
+        assertTrue(timings.get(0).skipped);
+        assertTrue(timings.get(1).skipped);
+
+        // Only a later day changed, so only the consumer showing every day runs.
+        fanOut.dispatch(buildSnapshot(LOCATION, 75, 80));
+        assertEquals(1, today.mConsumed.get());
+        assertEquals(2, days.mConsumed.get());
+
+        // The same weather somewhere else counts as a change.
+        fanOut.dispatch(buildSnapshot("94043", 75, 80));
+        assertEquals(2, today.mConsumed.get());
+        assertEquals(3, days.mConsumed.get());
+    }
+
+    public void testPreviousSnapshotSurvivesRestart() {
+        FakeConsumer days = new FakeConsumer("days");
+        createFanOut(Arrays.<PostSyncFanOut.Consumer>asList(days))
+                .dispatch(buildSnapshot(LOCATION, 75, 75));
+        assertEquals(1, days.mConsumed.get());
+
+        // A new fan-out, as in the next sync's process, still knows what was handed out.
+        PostSyncFanOut restarted = createFanOut(Arrays.<PostSyncFanOut.Consumer>asList(days));
+        assertTrue(restarted.dispatch(buildSnapshot(LOCATION, 75, 75)).get(0).skipped);
+        assertFalse(restarted.dispatch(buildSnapshot(LOCATION, 75, 80)).get(0).skipped);
+        assertEquals(2, days.mConsumed.get());
+    }
+
+    public void testFailingConsumerDoesNotStopTheOthers() {
+        FakeConsumer failing = new FakeConsumer("today");
+        failing.mFail = true;
+        FakeConsumer days = new FakeConsumer("days");
+        PostSyncFanOut fanOut = createFanOut(
+                Arrays.<PostSyncFanOut.Consumer>asList(failing, days));
+
+        List<PostSyncFanOut.Timing> timings = fanOut.dispatch(buildSnapshot(LOCATION, 75, 75));
+        assertEquals(1, days.mConsumed.get());
+        assertEquals(1, timings.size());
+        assertEquals("days", timings.get(0).consumer);
+    }
+
+    public void testFailedConsumerIsRetried() {
+        FakeConsumer failing = new FakeConsumer("today");
+        failing.mFail = true;
+        FakeConsumer days = new FakeConsumer("days");
+        PostSyncFanOut fanOut = createFanOut(
+                Arrays.<PostSyncFanOut.Consumer>asList(failing, days));
+        fanOut.dispatch(buildSnapshot(LOCATION, 75, 75));
+
+        // Nothing changed, but the consumer that failed hasn't shown this forecast yet.
+        failing.mFail = false;
+        List<PostSyncFanOut.Timing> timings = fanOut.dispatch(buildSnapshot(LOCATION, 75, 75));
+        assertFalse(timings.get(0).skipped);
+        assertTrue(timings.get(1).skipped);
+        assertEquals(2, failing.mConsumed.get());
+        assertEquals(1, days.mConsumed.get());
+
+        // Now that it has, it's skipped like the others.
+        assertTrue(fanOut.dispatch(buildSnapshot(LOCATION, 75, 75)).get(0).skipped);
+    }
+}
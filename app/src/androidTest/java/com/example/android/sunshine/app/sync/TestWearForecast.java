@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.shared.WearForecast;
+
+import java.util.Arrays;
+
+/*
+    Checks the forecast the phone packs for the watch face survives the trip, and stays small.
+ */
+public class TestWearForecast extends AndroidTestCase {
+
+    private static final long FIRST_DAY = 16420; // December 15th, 2014
+
+    private static WearForecast buildForecast(int days, boolean metric) {
+        WearForecast.Builder builder = new WearForecast.Builder(metric, days);
+        for (int i = 0; i < days; i++) {
+            builder.addDay(FIRST_DAY + i, 500 + i, 20.24 + i, -17.96 + i);
+        }
+        return builder.build();
+    }
+
+    public void testRoundTrip() {
+        WearForecast forecast = WearForecast.fromByteArray(buildForecast(14, false).toByteArray());
+
+        assertFalse(forecast.isMetric());
+        assertEquals(14, forecast.size());
+        for (int i = 0; i < 14; i++) {
+            assertEquals(FIRST_DAY + i, forecast.getEpochDay(i));
+            assertEquals(500 + i, forecast.getWeatherId(i));
+            // Tenths of a degree are kept; more than that isn't shown anywhere.
+            assertEquals(20.24 + i, forecast.getHigh(i), 0.05);
+            assertEquals(-17.96 + i, forecast.getLow(i), 0.05);
+        }
+        assertTrue(WearForecast.fromByteArray(buildForecast(1, true).toByteArray()).isMetric());
+    }
+
+    public void testPayloadIsCompact() {
+        // Ten bytes a day, after a four byte header.
+        assertEquals(4 + 14 * 10, buildForecast(14, true).toByteArray().length);
+    }
+
+    public void testSameForecastMakesSameBytes() {
+        // The Data Layer only reports a changed item when its bytes change.
+        assertTrue(Arrays.equals(buildForecast(14, true).toByteArray(),
+                buildForecast(14, true).toByteArray()));
+        assertFalse(Arrays.equals(buildForecast(14, true).toByteArray(),
+                buildForecast(14, false).toByteArray()));
+    }
+
+    public void testIndexOfDay() {
+        WearForecast forecast = buildForecast(14, true);
+        assertEquals(0, forecast.indexOfDay(FIRST_DAY));
+        assertEquals(13, forecast.indexOfDay(FIRST_DAY + 13));
+        assertEquals(-1, forecast.indexOfDay(FIRST_DAY - 1));
+        assertEquals(-1, forecast.indexOfDay(FIRST_DAY + 14));
+    }
+
+    public void testRejectsUnknownVersionsAndTruncation() {
+        byte[] bytes = buildForecast(3, true).toByteArray();
+
+        byte[] future = bytes.clone();
+        future[0] = (byte) (WearForecast.VERSION + 1);
+        try {
+            WearForecast.fromByteArray(future);
+            fail("Read a forecast from a version we don't know");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            WearForecast.fromByteArray(Arrays.copyOf(bytes, bytes.length - 1));
+            fail("Read a forecast that was cut short");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
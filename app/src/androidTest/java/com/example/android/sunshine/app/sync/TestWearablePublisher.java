@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestWearablePublisher extends AndroidTestCase {
+
+    private static final long PUBLISH_DELAY_MS = 100;
+    private static final long IDLE_DISCONNECT_MS = 300;
+    private static final long RETRY_DELAY_MS = 50;
+
+    private static final byte[] FORECAST_A = {1, 1, 0, 1, 0, 0, 64, 36, 1, -12, 0, -56, 0, 100};
+    private static final byte[] FORECAST_B = {1, 1, 0, 1, 0, 0, 64, 36, 3, 32, 0, -56, 0, 100};
+
+    // Records what would have gone to the wearable.
+    static class FakeTransport implements WearablePublisher.Transport {
+        final List<byte[]> mSent = new ArrayList<byte[]>();
+        int mConnects;
+        int mDisconnects;
+        boolean mConnected;
+        volatile boolean mFailPuts;
+
+        @Override
+        public synchronized boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public synchronized boolean connect() {
+            mConnects++;
+            mConnected = true;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean putForecast(byte[] forecast) {
+            if (mFailPuts) {
+                return false;
+            }
+            mSent.add(forecast);
+            return true;
+        }
+
+        @Override
+        public synchronized void disconnect() {
+            if (mConnected) {
+                mDisconnects++;
+            }
+            mConnected = false;
+        }
+
+        synchronized int sentCount() {
+            return mSent.size();
+        }
+    }
+
+    private FakeTransport mTransport;
+    private WearablePublisher mPublisher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTransport = new FakeTransport();
+        mPublisher = new WearablePublisher(mTransport, PUBLISH_DELAY_MS, IDLE_DISCONNECT_MS,
+                RETRY_DELAY_MS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPublisher.shutdown();
+        super.tearDown();
+    }
+
+    public void testOnlyTheLatestForecastIsSent() {
+        mPublisher.publish(FORECAST_A);
+        mPublisher.publish(FORECAST_B);
+        // publish() never waits on the wearable.
+        assertEquals(0, mTransport.sentCount());
+
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mTransport.sentCount() > 0;
+            }
+        }.run();
+        assertEquals(1, mTransport.sentCount());
+        assertTrue(Arrays.equals(FORECAST_B, mTransport.mSent.get(0)));
+        assertEquals(1, mTransport.mConnects);
+    }
+
+    public void testSameForecastIsNotSentAgain() {
+        mPublisher.publish(FORECAST_A);
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mPublisher.getPublishCount() == 1;
+            }
+        }.run();
+
+        mPublisher.publish(FORECAST_A.clone());
+        assertEquals(1, mPublisher.getSkipCount());
+
+        // A different one goes out over the connection that's still open.
+        mPublisher.publish(FORECAST_B);
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mPublisher.getPublishCount() == 2;
+            }
+        }.run();
+        assertEquals(1, mTransport.mConnects);
+    }
+
+    public void testDisconnectsWhenIdle() {
+        mPublisher.publish(FORECAST_A);
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mPublisher.getPublishCount() == 1;
+            }
+        }.run();
+        assertTrue(mTransport.isConnected());
+
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return !mTransport.isConnected();
+            }
+        }.run();
+        assertEquals(1, mTransport.mDisconnects);
+    }
+
+    public void testFailedSendsAreRetriedThenDropped() throws Exception {
+        mTransport.mFailPuts = true;
+        mPublisher.publish(FORECAST_A);
+
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                synchronized (mTransport) {
+                    return mTransport.mConnects == 3;
+                }
+            }
+        }.run();
+        // Every failure lets go of the connection, and nothing is tried after the third.
+        Thread.sleep(RETRY_DELAY_MS * 4);
+        synchronized (mTransport) {
+            assertEquals(3, mTransport.mConnects);
+            assertEquals(3, mTransport.mDisconnects);
+            assertFalse(mTransport.mConnected);
+        }
+        assertEquals(0, mPublisher.getPublishCount());
+
+        // The next sync tries again.
+        mTransport.mFailPuts = false;
+        mPublisher.publish(FORECAST_A);
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mPublisher.getPublishCount() == 1;
+            }
+        }.run();
+    }
+}
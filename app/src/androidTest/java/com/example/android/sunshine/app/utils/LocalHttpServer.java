@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A tiny HTTP server on the loopback interface, for tests that mustn't depend on the network.
+ * It answers GETs for the paths it was given with their bytes, and anything else with a 404,
+ * one connection at a time.
+ */
+public class LocalHttpServer {
+    private final ServerSocket mServerSocket;
+    private final Map<String, byte[]> mResponses = new HashMap<>();
+    private final Thread mThread;
+    private int mRequestCount;
+
+    public LocalHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "LocalHttpServer");
+        mThread.start();
+    }
+
+    /**
+     * @return the URL the server answers for a path, e.g. "/art/clear"
+     */
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    public synchronized void setResponse(String path, byte[] body) {
+        mResponses.put(path, body);
+    }
+
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+    }
+
+    private void serve() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Socket socket = mServerSocket.accept();
+                try {
+                    handle(socket);
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // Closed by shutdown(), or the client went away.
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        // Skip the headers.
+        String header;
+        while ((header = reader.readLine()) != null && header.length() > 0) {
+        }
+
+        String path = requestLine.split(" ")[1];
+        byte[] body;
+        synchronized (this) {
+            mRequestCount++;
+            body = mResponses.get(path);
+        }
+        OutputStream out = socket.getOutputStream();
+        String status = body != null ? "200 OK" : "404 Not Found";
+        if (body == null) {
+            body = new byte[0];
+        }
+        out.write(("HTTP/1.1 " + status + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+        out.write(body);
+        out.flush();
+    }
+}
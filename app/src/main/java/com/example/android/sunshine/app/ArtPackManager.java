@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps remote art packs on disk, so the forecast list, the detail view, the notification and
+ * the widgets don't each go to the network for the same dozen images.
+ *
+ * An art pack is identified by its preference value, the URL format its images are named by.
+ * The whole pack is downloaded at once into a staging directory, every image is checked to be
+ * one, and only then is the directory moved into place; a pack is either all there or not
+ * there at all.  Once it's there it's never downloaded again.
+ */
+public class ArtPackManager {
+    private static final String LOG_TAG = ArtPackManager.class.getSimpleName();
+
+    private static final String PACKS_DIR = "art_packs";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final int TIMEOUT_MS = 15000;
+
+    private static ArtPackManager sInstance;
+
+    private final File mRoot;
+    // Downloads run one at a time, off whichever thread asked for them.
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    // Guarded by this.  Packs asked for in this process, so each is tried once per process.
+    private final HashSet<String> mRequested = new HashSet<>();
+    private int mRequestCount;
+
+    public static synchronized ArtPackManager getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtPackManager(
+                    new File(context.getApplicationContext().getFilesDir(), PACKS_DIR));
+        }
+        return sInstance;
+    }
+
+    ArtPackManager(File root) {
+        mRoot = root;
+    }
+
+    /**
+     * @return the directory holding the pack, or null if it hasn't been downloaded
+     */
+    public File getPackDir(String packFormat) {
+        File dir = new File(mRoot, getPackKey(packFormat));
+        return dir.isDirectory() ? dir : null;
+    }
+
+    /**
+     * @return the downloaded image for the weather condition, or null if the pack hasn't been
+     * downloaded or has no image for it
+     */
+    public File getArtFile(String packFormat, int weatherId) {
+        int kind = WeatherConditions.getKind(weatherId);
+        File dir = getPackDir(packFormat);
+        if (kind == WeatherConditions.KIND_UNKNOWN || dir == null) {
+            return null;
+        }
+        return new File(dir, WeatherConditions.getArtName(kind));
+    }
+
+    /**
+     * Downloads the pack in the background, unless it's already on disk or was already asked
+     * for.  Once it's in place, art URLs point at the files instead of the network.
+     */
+    public void requestDownload(final String packFormat) {
+        synchronized (this) {
+            if (!mRequested.add(packFormat)) {
+                return;
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (getPackDir(packFormat) == null && download(packFormat)) {
+                    Utility.onArtPackDownloaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads and checks every image in the pack, and moves the pack into place if they
+     * all arrived.  Blocks; don't call it on the main thread.
+     *
+     * @return whether the pack is on disk now
+     */
+    boolean download(String packFormat) {
+        String key = getPackKey(packFormat);
+        File dir = new File(mRoot, key);
+        if (dir.isDirectory()) {
+            return true;
+        }
+        File partial = new File(mRoot, key + PARTIAL_SUFFIX);
+        deleteDir(partial);
+        if (!partial.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + partial);
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        HashSet<String> artNames = new HashSet<>();
+        for (int kind = 0; kind < WeatherConditions.KIND_COUNT; kind++) {
+            artNames.add(WeatherConditions.getArtName(kind));
+        }
+        for (String artName : artNames) {
+            String url = String.format(Locale.US, packFormat, artName);
+            File file = new File(partial, artName);
+            if (!downloadImage(url, file)) {
+                deleteDir(partial);
+                return false;
+            }
+        }
+
+        if (!partial.renameTo(dir)) {
+            Log.e(LOG_TAG, "Couldn't move " + partial + " into place");
+            deleteDir(partial);
+            return false;
+        }
+        Log.d(LOG_TAG, "Downloaded " + artNames.size() + " images from " + packFormat + " in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    /**
+     * @return how many images have been requested from the network
+     */
+    synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    private boolean downloadImage(String url, File file) {
+        synchronized (this) {
+            mRequestCount++;
+        }
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error " + connection.getResponseCode() + " downloading " + url);
+                return false;
+            }
+            InputStream in = connection.getInputStream();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error downloading " + url, e);
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        // An error page served with a 200 would otherwise be shown as a broken image forever.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(LOG_TAG, url + " isn't an image");
+            return false;
+        }
+        return true;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    // The preference value is a URL, so it's hashed into something usable as a file name.
+    static String getPackKey(String packFormat) {
+        return Utility.sha1Hex(packFormat);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Builds the day labels the forecast list, the detail view and the widgets show, and remembers
+ * them per day.  Every row of a forecast list asks for the same handful of days over and over,
+ * so after the first bind a label is a single lookup with no formatter work at all.
+ *
+ * The labels depend on what day it is today ("Today", "Tomorrow", day names for the coming
+ * week) and on the locale, so they are thrown away when either changes.  All methods are
+ * synchronized; the widgets format from binder threads while the list formats on the main one.
+ */
+public class DayFormatter {
+
+    private static final long HOUR_IN_MILLIS = 1000L * 60 * 60;
+
+    // More days than any forecast covers.  If we ever get past it, we start over.
+    private static final int MAX_CACHED_DAYS = 64;
+
+    // Slots in the labels array kept for each day.
+    private static final int LABEL_FRIENDLY = 0;
+    private static final int LABEL_FRIENDLY_LONG_TODAY = 1;
+    private static final int LABEL_FULL_FRIENDLY = 2;
+    private static final int LABEL_DAY_NAME = 3;
+    private static final int LABEL_MONTH_DAY = 4;
+    private static final int LABEL_COUNT = 5;
+
+    private static DayFormatter sInstance;
+
+    private final Context mContext;
+
+    // Labels by epoch day, see WeatherContract.toEpochDay.
+    private final LongSparseArray<String[]> mLabels = new LongSparseArray<>();
+
+    // What the cached labels were built for.
+    private Locale mLocale;
+    private long mToday;
+    private long mTomorrowStart;
+
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mShortDateFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private String mTodayString;
+    private String mTomorrowString;
+
+    public static synchronized DayFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DayFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the shared instance, formatters and all.  The formatters capture the time zone when
+     * they are created, so this has to happen when the time zone changes.
+     */
+    public static synchronized void reset() {
+        sInstance = null;
+    }
+
+    DayFormatter(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        long day = WeatherContract.toEpochDay(dateInMillis);
+        String[] labels = getLabels(day);
+        int slot = displayLongToday ? LABEL_FRIENDLY_LONG_TODAY : LABEL_FRIENDLY;
+        String label = labels[slot];
+        if (label == null) {
+            // The day string for forecast uses the following logic:
+            // For today: "Today, June 8"
+            // For tomorrow:  "Tomorrow"
+            // For the next 5 days: "Wednesday" (just the day name)
+            // For all days after that: "Mon Jun 8"
+            if (displayLongToday && day == mToday) {
+                label = mContext.getString(R.string.format_full_friendly_date,
+                        mTodayString, getFormattedMonthDay(dateInMillis));
+            } else if (day < mToday + 7) {
+                label = getDayName(dateInMillis);
+            } else {
+                label = mShortDateFormat.format(dateInMillis);
+            }
+            labels[slot] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        String[] labels = getLabels(WeatherContract.toEpochDay(dateInMillis));
+        String label = labels[LABEL_FULL_FRIENDLY];
+        if (label == null) {
+            label = mContext.getString(R.string.format_full_friendly_date,
+                    getDayName(dateInMillis), getFormattedMonthDay(dateInMillis));
+            labels[LABEL_FULL_FRIENDLY] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        long day = WeatherContract.toEpochDay(dateInMillis);
+        String[] labels = getLabels(day);
+        String label = labels[LABEL_DAY_NAME];
+        if (label == null) {
+            if (day == mToday) {
+                label = mTodayString;
+            } else if (day == mToday + 1) {
+                label = mTomorrowString;
+            } else {
+                label = mDayNameFormat.format(dateInMillis);
+            }
+            labels[LABEL_DAY_NAME] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        String[] labels = getLabels(WeatherContract.toEpochDay(dateInMillis));
+        String label = labels[LABEL_MONTH_DAY];
+        if (label == null) {
+            label = mMonthDayFormat.format(dateInMillis);
+            labels[LABEL_MONTH_DAY] = label;
+        }
+        return label;
+    }
+
+    // Overridden by tests that need it to be some other day.
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    // Must be called holding the lock.
+    private String[] getLabels(long day) {
+        long now = currentTimeMillis();
+        Locale locale = Locale.getDefault();
+        if (now >= mTomorrowStart || now < mTomorrowStart - 25 * HOUR_IN_MILLIS
+                || !locale.equals(mLocale)) {
+            startDay(now, locale);
+        }
+
+        String[] labels = mLabels.get(day);
+        if (labels == null) {
+            if (mLabels.size() >= MAX_CACHED_DAYS) {
+                mLabels.clear();
+            }
+            labels = new String[LABEL_COUNT];
+            mLabels.put(day, labels);
+        }
+        return labels;
+    }
+
+    private void startDay(long now, Locale locale) {
+        mLabels.clear();
+        mToday = WeatherContract.toEpochDay(now);
+        // Days are 23 to 25 hours long, so 36 hours after the start of today is always tomorrow.
+        mTomorrowStart = WeatherContract.normalizeDate(
+                WeatherContract.normalizeDate(now) + 36 * HOUR_IN_MILLIS);
+
+        if (!locale.equals(mLocale)) {
+            mLocale = locale;
+            mDayNameFormat = new SimpleDateFormat("EEEE", locale);
+            mShortDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+            mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+            mTodayString = mContext.getString(R.string.today);
+            mTomorrowString = mContext.getString(R.string.tomorrow);
+        }
+    }
+}
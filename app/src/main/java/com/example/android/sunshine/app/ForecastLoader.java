@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+import android.support.v7.util.DiffUtil;
+
+/**
+ * A {@link CursorLoader} for the forecast list that also formats every row while it's still on
+ * the loader thread.  The cursor it delivers is a {@link ForecastCursor}, which carries the
+ * {@link ForecastRow}s along with it, and how they differ from the rows this loader delivered
+ * last.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    /**
+     * The forecast cursor, and the rows built from it.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final ForecastRow[] mRows;
+        private final ItemIdIndex mPositionsById;
+        private final ForecastRow[] mPreviousRows;
+        private final DiffUtil.DiffResult mDiff;
+
+        ForecastCursor(Cursor cursor, ForecastRow[] rows, ItemIdIndex positionsById,
+                       ForecastRow[] previousRows, DiffUtil.DiffResult diff) {
+            super(cursor);
+            mRows = rows;
+            mPositionsById = positionsById;
+            mPreviousRows = previousRows;
+            mDiff = diff;
+        }
+
+        public ForecastRow[] getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return the position of each row by its weather _id.  Don't modify it.
+         */
+        public ItemIdIndex getPositionsById() {
+            return mPositionsById;
+        }
+
+        /**
+         * @return how to get from previousRows to these rows, or null if nothing was
+         * delivered before
+         */
+        public DiffUtil.DiffResult getDiffFrom(ForecastRow[] previousRows) {
+            return previousRows == mPreviousRows ? mDiff : null;
+        }
+    }
+
+    // The rows of the last cursor we delivered, which the next load is diffed against.
+    private volatile ForecastRow[] mDeliveredRows;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            ForecastRow[] rows = ForecastRow.fromCursor(getContext(), cursor);
+            ForecastRow[] previousRows = mDeliveredRows;
+            DiffUtil.DiffResult diff = previousRows == null ? null
+                    : ForecastRow.diff(previousRows, rows);
+            return new ForecastCursor(cursor, rows, ForecastRow.indexById(rows), previousRows,
+                    diff);
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (cursor instanceof ForecastCursor && !isReset()) {
+            mDeliveredRows = ((ForecastCursor) cursor).getRows();
+        }
+        super.deliverResult(cursor);
+    }
+}
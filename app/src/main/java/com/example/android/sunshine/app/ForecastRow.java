@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+
+/**
+ * Everything one row of the forecast list shows, already formatted.  Rows are built by
+ * {@link ForecastLoader} on the loader thread, so binding a row in {@link ForecastAdapter} only
+ * has to hand these to its views.
+ */
+public final class ForecastRow {
+    public final long id;
+    public final long date;
+    public final int weatherId;
+
+    // The date as the today layout shows it ("Today, June 8"), and as every other row does.
+    public final String todayDateText;
+    public final String dateText;
+
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String highText;
+    public final String highContentDescription;
+    public final String lowText;
+    public final String lowContentDescription;
+
+    // The today layout shows the large art, the other rows the small icon.
+    public final int artResourceId;
+    public final int iconResourceId;
+    // Where to load the art from, or null if we're using the built in graphics.
+    public final String artUrl;
+
+    private ForecastRow(Context context, Cursor cursor, boolean usingLocalGraphics) {
+        id = cursor.getLong(ForecastFragment.COL_WEATHER_ID);
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        todayDateText = Utility.getFriendlyDayString(context, date, true);
+        dateText = Utility.getFriendlyDayString(context, date, false);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+
+        highText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        highContentDescription = context.getString(R.string.a11y_high_temp, highText);
+        lowText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        lowContentDescription = context.getString(R.string.a11y_low_temp, lowText);
+
+        artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        iconResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+        artUrl = usingLocalGraphics ? null
+                : Utility.getArtUrlForWeatherCondition(context, weatherId);
+    }
+
+    /**
+     * Builds a row for every row of a cursor with the ForecastFragment.FORECAST_COLUMNS
+     * projection.  This reads preferences and resources, so keep it off the main thread.
+     */
+    public static ForecastRow[] fromCursor(Context context, Cursor cursor) {
+        boolean usingLocalGraphics = Utility.usingLocalGraphics(context);
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        for (int i = 0; i < rows.length; i++) {
+            cursor.moveToPosition(i);
+            rows[i] = new ForecastRow(context, cursor, usingLocalGraphics);
+        }
+        return rows;
+    }
+
+    /**
+     * @return the position of every row, by its weather _id
+     */
+    public static ItemIdIndex indexById(ForecastRow[] rows) {
+        ItemIdIndex positions = new ItemIdIndex(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            positions.put(rows[i].id, i);
+        }
+        return positions;
+    }
+
+    /**
+     * @return true if this row would show exactly what the other one does
+     */
+    public boolean hasSameContentsAs(ForecastRow other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && todayDateText.equals(other.todayDateText)
+                && dateText.equals(other.dateText)
+                && description.equals(other.description)
+                && highText.equals(other.highText)
+                && lowText.equals(other.lowText)
+                && TextUtils.equals(artUrl, other.artUrl);
+    }
+
+    /**
+     * Works out which rows were added, removed or changed between two forecasts, matching rows
+     * up by their weather _id.  The forecast is sorted by date, so rows never move and we
+     * don't ask DiffUtil to look for moves.
+     */
+    public static DiffUtil.DiffResult diff(final ForecastRow[] oldRows,
+                                           final ForecastRow[] newRows) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldRows.length;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newRows.length;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldRows[oldItemPosition].id == newRows[newItemPosition].id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldRows[oldItemPosition].hasSameContentsAs(newRows[newItemPosition]);
+            }
+        }, false);
+    }
+}
@@ -15,21 +15,26 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
+import android.content.ContextWrapper;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.util.SparseBooleanArray;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  If the adapter
+ * has stable ids, the selection follows the selected items' ids when the data set changes.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -41,11 +46,37 @@ public class ItemChoiceManager {
         @Override
         public void onChanged() {
             super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
+            onPositionsChanged();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onPositionsChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onPositionsChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onPositionsChanged();
         }
     };
 
+    /**
+     * Adapters with stable ids can implement this so a checked item is found again after a
+     * data set change without searching for it.
+     */
+    public interface ItemIdLookup {
+        /**
+         * @return the position of the item with the given stable id, or
+         * RecyclerView.NO_POSITION if there isn't one
+         */
+        int getPositionForItemId(long id);
+    }
+
     private ItemChoiceManager() {
     }
 
@@ -53,15 +84,9 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
-    /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
-     */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
-
     /**
      * Running state of which positions are currently checked
      */
@@ -72,7 +97,54 @@ public class ItemChoiceManager {
      * If there is a value for a given key, the checked state for that ID is true
      * and the value holds the last known position in the adapter for that id.
      */
-    LongSparseArray<Integer> mCheckedIdStates = new LongSparseArray<Integer>();
+    ItemIdIndex mCheckedIdStates = new ItemIdIndex();
+
+    /**
+     * Like AbsListView.MultiChoiceModeListener, for the support library's ActionMode.  Gets
+     * the action mode's callbacks, and hears about every item checked or unchecked while it's
+     * showing.
+     */
+    public interface MultiChoiceModeListener extends ActionMode.Callback {
+        void onItemCheckedStateChanged(ActionMode mode, int position, long id, boolean checked);
+    }
+
+    private MultiChoiceModeListener mMultiChoiceModeListener;
+
+    // The action mode showing while items are picked in CHOICE_MODE_MULTIPLE_MODAL, or null.
+    private ActionMode mChoiceActionMode;
+
+    private final ActionMode.Callback mChoiceActionModeCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            return mMultiChoiceModeListener == null
+                    || mMultiChoiceModeListener.onCreateActionMode(mode, menu);
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return mMultiChoiceModeListener != null
+                    && mMultiChoiceModeListener.onPrepareActionMode(mode, menu);
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            return mMultiChoiceModeListener != null
+                    && mMultiChoiceModeListener.onActionItemClicked(mode, item);
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            if (mMultiChoiceModeListener != null) {
+                mMultiChoiceModeListener.onDestroyActionMode(mode);
+            }
+            mChoiceActionMode = null;
+            // Leaving the mode unchecks everything, like AbsListView does.
+            for (int i = 0; i < mCheckStates.size(); i++) {
+                mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
+            }
+            clearSelections();
+        }
+    };
 
     public void onClick(RecyclerView.ViewHolder vh) {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
@@ -109,6 +181,13 @@ public class ItemChoiceManager {
             case AbsListView.CHOICE_MODE_MULTIPLE: {
                 boolean checked = mCheckStates.get(position, false);
                 mCheckStates.put(position, !checked);
+                if (mAdapter.hasStableIds()) {
+                    if (checked) {
+                        mCheckedIdStates.delete(mAdapter.getItemId(position));
+                    } else {
+                        mCheckedIdStates.put(mAdapter.getItemId(position), position);
+                    }
+                }
                 // We directly call onBindViewHolder here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
@@ -116,9 +195,82 @@ public class ItemChoiceManager {
                 break;
             }
             case AbsListView.CHOICE_MODE_MULTIPLE_MODAL: {
-                throw new RuntimeException("Multiple Modal not implemented in ItemChoiceManager.");
+                // Until a long press starts the action mode, a click is just a click.
+                if (mChoiceActionMode != null) {
+                    toggleModalChoice(vh, position);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Starts picking items in CHOICE_MODE_MULTIPLE_MODAL, with the long pressed one checked.
+     *
+     * @return true if the long press was used, false if the view should handle it itself
+     */
+    public boolean onLongClick(RecyclerView.ViewHolder vh) {
+        if (mChoiceMode != AbsListView.CHOICE_MODE_MULTIPLE_MODAL || mChoiceActionMode != null) {
+            return false;
+        }
+        int position = vh.getAdapterPosition();
+        if (position == RecyclerView.NO_POSITION) {
+            return false;
+        }
+        AppCompatActivity activity = findActivity(vh.itemView.getContext());
+        if (activity == null) {
+            Log.d(LOG_TAG, "No activity to show the choice action mode in");
+            return false;
+        }
+        mChoiceActionMode = activity.startSupportActionMode(mChoiceActionModeCallback);
+        if (mChoiceActionMode == null) {
+            return false;
+        }
+        toggleModalChoice(vh, position);
+        return true;
+    }
+
+    /**
+     * @return true while the CHOICE_MODE_MULTIPLE_MODAL action mode is showing, when clicks
+     * should only check and uncheck items
+     */
+    public boolean isInActionMode() {
+        return mChoiceActionMode != null;
+    }
+
+    public void setMultiChoiceModeListener(MultiChoiceModeListener listener) {
+        mMultiChoiceModeListener = listener;
+    }
+
+    private void toggleModalChoice(RecyclerView.ViewHolder vh, int position) {
+        boolean checked = !isItemChecked(position);
+        long id = mAdapter.getItemId(position);
+        if (checked) {
+            mCheckStates.put(position, true);
+            mCheckedIdStates.put(id, position);
+        } else {
+            mCheckStates.delete(position);
+            mCheckedIdStates.delete(id);
+        }
+        mAdapter.onBindViewHolder(vh, position);
+
+        if (mMultiChoiceModeListener != null) {
+            mMultiChoiceModeListener.onItemCheckedStateChanged(mChoiceActionMode, position, id,
+                    checked);
+        }
+        if (mCheckStates.size() == 0) {
+            mChoiceActionMode.finish();
+        }
+    }
+
+    private static AppCompatActivity findActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof AppCompatActivity) {
+                return (AppCompatActivity) context;
             }
+            context = ((ContextWrapper) context).getBaseContext();
         }
+        return null;
     }
 
     /**
@@ -127,10 +279,15 @@ public class ItemChoiceManager {
      * AbsListView.CHOICE_MODE_SINGLE, the RecyclerView allows up to one item to  be in a
      * chosen state.
      *
-     * @param choiceMode One of AbsListView.CHOICE_MODE_NONE, AbsListView.CHOICE_MODE_SINGLE
+     * @param choiceMode One of AbsListView.CHOICE_MODE_NONE, AbsListView.CHOICE_MODE_SINGLE,
+     *                   AbsListView.CHOICE_MODE_MULTIPLE or
+     *                   AbsListView.CHOICE_MODE_MULTIPLE_MODAL
      */
     public void setChoiceMode(int choiceMode) {
         if (mChoiceMode != choiceMode) {
+            if (mChoiceActionMode != null) {
+                mChoiceActionMode.finish();
+            }
             mChoiceMode = choiceMode;
             clearSelections();
         }
@@ -146,6 +303,10 @@ public class ItemChoiceManager {
      * @see #setChoiceMode(int)
      */
     public boolean isItemChecked(int position) {
+        // With stable ids this is two array reads and a hash probe, whatever the selection.
+        if (mAdapter.hasStableIds() && position >= 0 && position < mAdapter.getItemCount()) {
+            return mCheckedIdStates.containsKey(mAdapter.getItemId(position));
+        }
         return mCheckStates.get(position);
     }
 
@@ -154,38 +315,53 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
+    private void onPositionsChanged() {
+        if (mAdapter.hasStableIds()) {
+            confirmCheckedPositionsById();
+        }
+    }
+
+    /*
+        Moves every checked position to wherever its item's id is now, and forgets the items
+        that are gone.
+     */
+    void confirmCheckedPositionsById() {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
+        final int itemCount = mAdapter.getItemCount();
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
+            int position;
+            if (lastPos < itemCount && mAdapter.getItemId(lastPos) == id) {
+                position = lastPos;
+            } else {
+                position = findPositionForItemId(id, itemCount);
+            }
 
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+            if (position == RecyclerView.NO_POSITION) {
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckStates.put(position, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
+            }
+        }
+    }
+
+    private int findPositionForItemId(long id, int itemCount) {
+        if (mAdapter instanceof ItemIdLookup) {
+            return ((ItemIdLookup) mAdapter).getPositionForItemId(id);
+        }
+        // Adapters that can't look ids up get the whole list searched.
+        for (int position = 0; position < itemCount; position++) {
+            if (mAdapter.getItemId(position) == id) {
+                return position;
             }
         }
+        return RecyclerView.NO_POSITION;
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
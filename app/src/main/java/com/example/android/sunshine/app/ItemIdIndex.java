@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+
+/**
+ * Maps item ids to positions with primitive arrays, so neither lookups nor updates allocate.
+ *
+ * It reads like a {@link android.support.v4.util.LongSparseArray LongSparseArray}&lt;Integer&gt;,
+ * including the keyAt/valueAt iteration, but lookups hash instead of binary searching.  Entries
+ * are kept densely in insertion order, except that removing one moves the last entry into its
+ * place.
+ */
+public class ItemIdIndex {
+
+    private static final int MIN_TABLE_SIZE = 8;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mSize;
+
+    // Open addressing with linear probing.  Each slot holds an index into mKeys plus one, or
+    // 0 if it's empty.  Always at most half full, and a power of two long.
+    private int[] mTable;
+
+    public ItemIdIndex() {
+        this(0);
+    }
+
+    public ItemIdIndex(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mTable = new int[tableSizeFor(capacity)];
+    }
+
+    private static int tableSizeFor(int size) {
+        int tableSize = MIN_TABLE_SIZE;
+        while (tableSize < size * 2) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    // Ids are mostly consecutive row ids, so spread them before masking.
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long keyAt(int index) {
+        return mKeys[index];
+    }
+
+    public int valueAt(int index) {
+        return mValues[index];
+    }
+
+    public void setValueAt(int index, int value) {
+        mValues[index] = value;
+    }
+
+    /**
+     * @return the index of the id's entry, or -1 if it isn't in the index
+     */
+    public int indexOfKey(long id) {
+        int slot = slotOf(id);
+        return slot < 0 ? -1 : mTable[slot] - 1;
+    }
+
+    public boolean containsKey(long id) {
+        return slotOf(id) >= 0;
+    }
+
+    public int get(long id, int valueIfMissing) {
+        int slot = slotOf(id);
+        return slot < 0 ? valueIfMissing : mValues[mTable[slot] - 1];
+    }
+
+    public void put(long id, int value) {
+        int index = indexOfKey(id);
+        if (index >= 0) {
+            mValues[index] = value;
+            return;
+        }
+
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        if ((mSize + 1) * 2 > mTable.length) {
+            mTable = new int[mTable.length * 2];
+            for (int i = 0; i < mSize; i++) {
+                insertSlot(mKeys[i], i + 1);
+            }
+        }
+        mKeys[mSize] = id;
+        mValues[mSize] = value;
+        mSize++;
+        insertSlot(id, mSize);
+    }
+
+    public void delete(long id) {
+        int index = indexOfKey(id);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * Removes the entry at an index.  The last entry takes its place, so when removing while
+     * iterating, look at the same index again.
+     */
+    public void removeAt(int index) {
+        removeSlot(slotOf(mKeys[index]));
+        int last = mSize - 1;
+        if (index != last) {
+            mTable[slotOf(mKeys[last])] = index + 1;
+            mKeys[index] = mKeys[last];
+            mValues[index] = mValues[last];
+        }
+        mSize--;
+    }
+
+    public void clear() {
+        Arrays.fill(mTable, 0);
+        mSize = 0;
+    }
+
+    private int slotOf(long id) {
+        int mask = mTable.length - 1;
+        int slot = hash(id) & mask;
+        while (true) {
+            int entry = mTable[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (mKeys[entry - 1] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insertSlot(long id, int entry) {
+        int mask = mTable.length - 1;
+        int slot = hash(id) & mask;
+        while (mTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mTable[slot] = entry;
+    }
+
+    // Empties a slot, then moves later entries of the same probe run back into the hole so
+    // every entry stays reachable from its home slot without tombstones.
+    private void removeSlot(int slot) {
+        int mask = mTable.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (mTable[next] != 0) {
+            int home = hash(mKeys[mTable[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                mTable[hole] = mTable[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mTable[hole] = 0;
+    }
+}
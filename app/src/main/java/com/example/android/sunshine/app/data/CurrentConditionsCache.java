@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.app.Utility;
+
+/**
+ * An in-process cache of the current conditions (the first forecast row from a given day on)
+ * for a location, so the Today widget and Muzei don't query the provider every time they're
+ * asked to update.  Entries are keyed by location setting and local day.
+ *
+ * Like {@link LocationCache}, it watches {@link WeatherContract.WeatherEntry#CONTENT_URI} and
+ * drops everything it knows as soon as any weather changes.
+ */
+public class CurrentConditionsCache {
+
+    // The preferred location, plus a few left over from before it changed.
+    private static final int MAX_ENTRIES = 8;
+
+    private static final String[] CONDITIONS_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_SHORT_DESC = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private static CurrentConditionsCache sInstance;
+
+    /**
+     * The weather to show for a location, with the temperatures already formatted.
+     */
+    public static final class Conditions {
+        public final String locationSetting;
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+        // The units the formatted temperatures are in.
+        public final boolean metric;
+        public final String formattedHigh;
+        public final String formattedLow;
+
+        Conditions(Context context, String locationSetting, int weatherId, String description,
+                   double high, double low) {
+            this.locationSetting = locationSetting;
+            this.weatherId = weatherId;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+            this.metric = Utility.isMetric(context);
+            this.formattedHigh = Utility.formatTemperature(context, high);
+            this.formattedLow = Utility.formatTemperature(context, low);
+        }
+    }
+
+    private final Context mContext;
+    private final LruCache<String, Conditions> mConditions = new LruCache<>(MAX_ENTRIES);
+
+    // Bumped on every change to the weather table, see LocationCache.
+    private int mGeneration;
+    private int mQueryCount;
+
+    public static synchronized CurrentConditionsCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CurrentConditionsCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private CurrentConditionsCache(Context context) {
+        mContext = context;
+        // The provider notifies the weather URI of each location it changed, which are all
+        // descendants of CONTENT_URI.
+        context.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Forgets all cached conditions.
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mConditions.evictAll();
+    }
+
+    /**
+     * Caches conditions the caller already has, such as the first day of a forecast the sync
+     * just stored, so the next {@link #get} for that day doesn't go to the provider for them.
+     */
+    public void put(String locationSetting, long date, int weatherId, String description,
+                    double high, double low) {
+        Conditions conditions = new Conditions(mContext, locationSetting, weatherId, description,
+                high, low);
+        synchronized (this) {
+            // Whatever is being read from the provider right now is older than this.
+            mGeneration++;
+            mConditions.put(locationSetting + '/' + WeatherContract.toEpochDay(date), conditions);
+        }
+    }
+
+    /**
+     * @return today's conditions for the location, or null if there's no forecast for it
+     */
+    public Conditions get(String locationSetting) {
+        return get(locationSetting, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the conditions for the first forecast day on or after the date, or null if there
+     * is none
+     */
+    public Conditions get(String locationSetting, long date) {
+        String key = locationSetting + '/' + WeatherContract.toEpochDay(date);
+        boolean metric = Utility.isMetric(mContext);
+        int generation;
+        synchronized (this) {
+            Conditions conditions = mConditions.get(key);
+            if (conditions != null) {
+                if (conditions.metric != metric) {
+                    // The units changed, not the weather: reformat what we have.
+                    conditions = new Conditions(mContext, locationSetting, conditions.weatherId,
+                            conditions.description, conditions.high, conditions.low);
+                    mConditions.put(key, conditions);
+                }
+                return conditions;
+            }
+            generation = mGeneration;
+            mQueryCount++;
+        }
+
+        Conditions conditions = query(locationSetting, date);
+        if (conditions != null) {
+            synchronized (this) {
+                // Don't cache rows a change has already replaced while we were reading them.
+                if (generation == mGeneration) {
+                    mConditions.put(key, conditions);
+                }
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * @return how many times the cache has gone to the provider
+     */
+    synchronized int getQueryCount() {
+        return mQueryCount;
+    }
+
+    private Conditions query(String locationSetting, long date) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                        date),
+                CONDITIONS_PROJECTION,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        Conditions conditions = null;
+        if (cursor.moveToFirst()) {
+            conditions = new Conditions(mContext, locationSetting,
+                    cursor.getInt(INDEX_WEATHER_ID),
+                    cursor.getString(INDEX_SHORT_DESC),
+                    cursor.getDouble(INDEX_MAX_TEMP),
+                    cursor.getDouble(INDEX_MIN_TEMP));
+        }
+        cursor.close();
+        return conditions;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A small in-process cache of the location table, so the sync doesn't have to ask the provider
+ * for the _id of a location it has already stored on every run.
+ *
+ * The cache watches {@link WeatherContract.LocationEntry#CONTENT_URI} and drops everything it
+ * knows as soon as the location table changes, whoever changed it.
+ */
+public class LocationCache {
+
+    // Far more locations than anybody tracks.
+    private static final int MAX_LOCATIONS = 32;
+
+    private static final String[] LOCATION_PROJECTION = new String[] {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+    private static final int INDEX_CITY_NAME = 2;
+    private static final int INDEX_COORD_LAT = 3;
+    private static final int INDEX_COORD_LONG = 4;
+
+    private static LocationCache sInstance;
+
+    /**
+     * One row of the location table.
+     */
+    public static final class Location {
+        public final long id;
+        public final String locationSetting;
+        public final String cityName;
+        public final double latitude;
+        public final double longitude;
+
+        Location(long id, String locationSetting, String cityName, double latitude,
+                 double longitude) {
+            this.id = id;
+            this.locationSetting = locationSetting;
+            this.cityName = cityName;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+    private final LruCache<String, Location> mBySetting = new LruCache<>(MAX_LOCATIONS);
+    private final LruCache<Long, Location> mById = new LruCache<>(MAX_LOCATIONS);
+
+    // Every location in the table, or null if we haven't read them all since the last change.
+    private List<Location> mAll;
+
+    // Bumped on every change to the location table.  A query only gets to fill the cache if no
+    // change came in while it ran, or we'd cache rows that are already out of date.
+    private int mGeneration;
+
+    public static synchronized LocationCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LocationCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private LocationCache(Context context) {
+        mContentResolver = context.getContentResolver();
+        // No handler: onChange runs on the binder thread that delivers it, which is all we need
+        // to clear a few maps.
+        mContentResolver.registerContentObserver(WeatherContract.LocationEntry.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Forgets every cached location.
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mBySetting.evictAll();
+        mById.evictAll();
+        mAll = null;
+    }
+
+    /**
+     * @return the location stored for a location setting, or null if there is none
+     */
+    public Location get(String locationSetting) {
+        int generation;
+        synchronized (this) {
+            Location location = mBySetting.get(locationSetting);
+            if (location != null) {
+                return location;
+            }
+            generation = mGeneration;
+        }
+        List<Location> found = query(
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[] {locationSetting});
+        cache(found, generation);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * @return the location with the given _id, or null if there is none
+     */
+    public Location get(long id) {
+        int generation;
+        synchronized (this) {
+            Location location = mById.get(id);
+            if (location != null) {
+                return location;
+            }
+            generation = mGeneration;
+        }
+        List<Location> found = query(WeatherContract.LocationEntry._ID + " = ?",
+                new String[] {Long.toString(id)});
+        cache(found, generation);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * @return every location in the location table
+     */
+    public List<Location> getAll() {
+        int generation;
+        synchronized (this) {
+            if (mAll != null) {
+                return mAll;
+            }
+            generation = mGeneration;
+        }
+        List<Location> all = Collections.unmodifiableList(query(null, null));
+        synchronized (this) {
+            if (generation == mGeneration && all.size() <= MAX_LOCATIONS) {
+                mAll = all;
+            }
+        }
+        cache(all, generation);
+        return all;
+    }
+
+    /**
+     * Returns the location stored for a location setting, adding it to the location table first
+     * if it isn't there yet.
+     */
+    public Location getOrInsert(String locationSetting, String cityName, double latitude,
+                                double longitude) {
+        Location location = get(locationSetting);
+        if (location != null) {
+            return location;
+        }
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, latitude);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, longitude);
+        Uri insertedUri = mContentResolver.insert(
+                WeatherContract.LocationEntry.CONTENT_URI, locationValues);
+
+        // The insert's own change notification will clear this again when it arrives, which
+        // costs the next lookup one query.
+        location = new Location(ContentUris.parseId(insertedUri), locationSetting, cityName,
+                latitude, longitude);
+        synchronized (this) {
+            mBySetting.put(locationSetting, location);
+            mById.put(location.id, location);
+        }
+        return location;
+    }
+
+    private synchronized void cache(List<Location> locations, int generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+        for (Location location : locations) {
+            mBySetting.put(location.locationSetting, location);
+            mById.put(location.id, location);
+        }
+    }
+
+    private List<Location> query(String selection, String[] selectionArgs) {
+        ArrayList<Location> locations = new ArrayList<>();
+        Cursor cursor = mContentResolver.query(WeatherContract.LocationEntry.CONTENT_URI,
+                LOCATION_PROJECTION, selection, selectionArgs, null);
+        if (cursor == null) {
+            return locations;
+        }
+        while (cursor.moveToNext()) {
+            locations.add(new Location(
+                    cursor.getLong(INDEX_LOCATION_ID),
+                    cursor.getString(INDEX_LOCATION_SETTING),
+                    cursor.getString(INDEX_CITY_NAME),
+                    cursor.getDouble(INDEX_COORD_LAT),
+                    cursor.getDouble(INDEX_COORD_LONG)));
+        }
+        cursor.close();
+        return locations;
+    }
+}
@@ -19,7 +19,8 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -44,14 +45,69 @@ public class WeatherContract {
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
 
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    // The zone dates are normalized in.  Kept here because TimeZone.getDefault() hands out a
+    // fresh copy on every call; TimeZoneChangedReceiver clears it when the zone changes.
+    private static volatile TimeZone sTimeZone;
+
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the the Julian day in the device's time zone.
+    // This is plain arithmetic on the zone's offsets, so it allocates nothing; the provider
+    // calls it for every row it writes.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        TimeZone timeZone = getTimeZone();
+        return startOfEpochDay(timeZone, toEpochDay(timeZone, startDate));
+    }
+
+    /**
+     * @return the local calendar day a date falls on, counted in days since January 1st, 1970
+     */
+    public static long toEpochDay(long date) {
+        return toEpochDay(getTimeZone(), date);
+    }
+
+    /**
+     * Forgets the cached time zone, so the next date is normalized in the current one.
+     */
+    static void resetTimeZone() {
+        sTimeZone = null;
+    }
+
+    private static TimeZone getTimeZone() {
+        TimeZone timeZone = sTimeZone;
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+            sTimeZone = timeZone;
+        }
+        return timeZone;
+    }
+
+    private static long toEpochDay(TimeZone timeZone, long date) {
+        long localTime = date + timeZone.getOffset(date);
+        // Floor, not truncate, so dates before 1970 land on the right day.
+        long epochDay = localTime / DAY_IN_MILLIS;
+        if (localTime % DAY_IN_MILLIS < 0) {
+            epochDay--;
+        }
+        return epochDay;
+    }
+
+    private static long startOfEpochDay(TimeZone timeZone, long epochDay) {
+        long localMidnight = epochDay * DAY_IN_MILLIS;
+        // The offset at midnight isn't known until we know when midnight is, and on the day DST
+        // starts or ends it differs from the offset later that day.  A first guess gets within
+        // a few hours of midnight, and the offset there is the right one.
+        long guess = localMidnight - timeZone.getOffset(localMidnight);
+        long guessOffset = timeZone.getOffset(guess);
+        long start = localMidnight - guessOffset;
+        if (toEpochDay(timeZone, start) < epochDay) {
+            // Where DST starts at midnight (Sao Paulo, Santiago, Havana) there is no midnight,
+            // and that lands an hour early, on the evening before.  The day starts when the
+            // clocks jump instead.
+            start += guessOffset - timeZone.getOffset(start);
+        }
+        return start;
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -103,6 +159,11 @@ public class WeatherContract {
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date, stored as long in milliseconds since the epoch
         public static final String COLUMN_DATE = "date";
+        // The local day of COLUMN_DATE, as days since the epoch (see toEpochDay), in the time
+        // zone the row was written in.  Filled in by the provider from COLUMN_DATE; may be null
+        // for rows written around it.  Rows aren't rewritten when the zone changes, so look a
+        // day up by COLUMN_DATE, not by this.
+        public static final String COLUMN_EPOCH_DAY = "epoch_day";
         // Weather id as returned by API, to identify the icon to be used
         public static final String COLUMN_WEATHER_ID = "weather_id";
 
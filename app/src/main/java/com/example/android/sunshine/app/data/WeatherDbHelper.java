@@ -15,25 +15,97 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
+import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.TimeZone;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 4;
+
+    // Databases older than this are recreated rather than migrated.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Covers the forecast list, the widgets and Muzei: weather rows of one location from a
+    // start date on, in date order, or on one date.  _id comes along for free as the rowid.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    // Write-ahead logging lets the CursorLoaders and widgets keep reading the last committed
+    // forecast while the sync adapter is in the middle of a bulk insert, instead of waiting for
+    // its transaction to finish.
+    private final boolean mWriteAheadLogging;
+
+    // How many WAL pages SQLite lets build up before it checkpoints on its own; 0 turns that off.
+    private final int mAutoCheckpointPages;
+
+    // Whether the provider checkpoints right after each bulk insert, while no one is writing.
+    private final boolean mCheckpointAfterBulkInsert;
+
     public WeatherDbHelper(Context context) {
+        this(context, context.getResources().getBoolean(R.bool.db_write_ahead_logging));
+    }
+
+    WeatherDbHelper(Context context, boolean writeAheadLogging) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        Resources res = context.getResources();
+        mWriteAheadLogging = writeAheadLogging
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+        mAutoCheckpointPages = res.getInteger(R.integer.db_wal_autocheckpoint_pages);
+        mCheckpointAfterBulkInsert = res.getBoolean(R.bool.db_wal_checkpoint_after_bulk_insert);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(mWriteAheadLogging);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!mWriteAheadLogging || db.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // Before Jelly Bean the helper can't do it for us.
+            enableWriteAheadLogging(db);
+        }
+        // PRAGMAs that answer with a row have to go through rawQuery.
+        Cursor cursor = db.rawQuery("PRAGMA wal_autocheckpoint=" + mAutoCheckpointPages, null);
+        cursor.moveToFirst();
+        cursor.close();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void enableWriteAheadLogging(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    /**
+     * Copies what the write-ahead log holds back into the database file, if the checkpoint
+     * policy asks for it.  Passive, so it never waits for, or blocks, a reader.  Call it
+     * outside of any transaction.
+     */
+    void checkpointAfterBulkInsert(SQLiteDatabase db) {
+        if (!mWriteAheadLogging || !mCheckpointAfterBulkInsert) {
+            return;
+        }
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        cursor.moveToFirst();
+        cursor.close();
     }
 
     @Override
@@ -70,6 +142,9 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
                 WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
 
+                // Last, so that databases that gained it through ALTER TABLE look the same.
+                WeatherEntry.COLUMN_EPOCH_DAY + " INTEGER, " +
+
                 // Set up the location column as a foreign key to location table.
                 " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
                 LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
@@ -81,18 +156,78 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        createWeatherIndex(sqLiteDatabase);
+    }
+
+    /*
+        The UNIQUE constraints already give us an index on location_setting and one on
+        (date, location_id).  The location side of the join is served well by the first, but the
+        second leads with the date, while the UI asks for the days of one location from a start
+        date on, ordered by date.  This index leads with the location and carries the columns the
+        forecast list, the widgets and Muzei project, so SQLite can answer those queries without
+        touching the weather table at all.  The detail view reads more columns, but only ever
+        one row.
+     */
+    private static void createWeatherIndex(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE +
+                " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ");");
+    }
+
+    private static void addEpochDay(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME +
+                " ADD COLUMN " + WeatherEntry.COLUMN_EPOCH_DAY + " INTEGER");
+
+        // Every stored date is a local midnight.  Shifting it by today's offset lands within an
+        // hour of the start of its day, DST or not, so rounding to the nearest day finds it.
+        final long dayInMillis = 1000L * 60 * 60 * 24;
+        long shift = TimeZone.getDefault().getOffset(System.currentTimeMillis()) + dayInMillis / 2;
+        sqLiteDatabase.execSQL("UPDATE " + WeatherEntry.TABLE_NAME +
+                " SET " + WeatherEntry.COLUMN_EPOCH_DAY + " = (" +
+                WeatherEntry.COLUMN_DATE + " + " + shift + ") / " + dayInMillis);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // This database is only a cache for online data, but throwing it away on every schema
+        // change means every screen, widget and the watch face is empty until the first sync
+        // after the update.  So we migrate one version at a time and keep the rows.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // Nothing older than this shipped with the current tables, so start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // SQLiteOpenHelper runs this in a transaction, so a failed step leaves the old
+        // version in place.
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            upgradeTo(sqLiteDatabase, version);
+        }
+    }
+
+    /*
+        Takes the database from version - 1 to version.  When you change the schema, bump
+        DATABASE_VERSION, make the change in onCreate for new installs, and add a case here that
+        makes the same change to an existing database without losing its rows.
+     */
+    private static void upgradeTo(SQLiteDatabase sqLiteDatabase, int version) {
+        switch (version) {
+            case 3:
+                createWeatherIndex(sqLiteDatabase);
+                break;
+            case 4:
+                addEpochDay(sqLiteDatabase);
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
     }
 }
@@ -17,12 +17,21 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.HashSet;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -35,7 +44,8 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    // The join and its selections are package-private so TestDb can check their query plans.
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -57,17 +67,22 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //date = ? AND location_id = ?
+    private static final String sDayAndLocationSelection =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -221,6 +236,179 @@ public class WeatherProvider extends ContentProvider {
         return retCursor;
     }
 
+    /*
+        Every change a provider call makes is recorded in a Batch, and observers are told about
+        the whole Batch at once when it is done.  Outside of applyBatch each call is its own Batch;
+        inside it, every operation adds to the one Batch of the surrounding transaction.
+
+        Weather changes are recorded as the locations they touched, and announced on
+        WeatherEntry.buildWeatherLocation for each of them.  The loaders for other locations
+        don't have to re-query, and a sync that inserts and deletes only wakes them once.
+     */
+    private static final class Batch {
+        final HashSet<Long> weatherLocationIds = new HashSet<>();
+        // A weather change we couldn't pin to its locations.
+        boolean allWeather;
+        boolean locations;
+
+        // The upsert statements, compiled the first time the Batch writes a day with them.
+        private SQLiteStatement mUpdateWeather;
+        private SQLiteStatement mInsertWeather;
+
+        void addWeatherLocation(ContentValues values) {
+            Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            if (locationId == null) {
+                allWeather = true;
+            } else {
+                weatherLocationIds.add(locationId);
+            }
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        SQLiteStatement updateWeather(SQLiteDatabase db) {
+            if (mUpdateWeather == null) {
+                mUpdateWeather = db.compileStatement(sWeatherUpdateByDayAndLocation);
+            }
+            return mUpdateWeather;
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        SQLiteStatement insertWeather(SQLiteDatabase db) {
+            if (mInsertWeather == null) {
+                mInsertWeather = db.compileStatement(sWeatherInsert);
+            }
+            return mInsertWeather;
+        }
+
+        void close() {
+            if (mUpdateWeather != null) {
+                mUpdateWeather.close();
+                mUpdateWeather = null;
+            }
+            if (mInsertWeather != null) {
+                mInsertWeather.close();
+                mInsertWeather = null;
+            }
+        }
+    }
+
+    // The Batch of the applyBatch running on this thread, if any.
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    // Joins the applyBatch running on this thread, or starts a Batch of its own.
+    private Batch beginBatch() {
+        Batch batch = mBatch.get();
+        return batch != null ? batch : new Batch();
+    }
+
+    // Ends a Batch started by beginBatch.  Only a Batch of its own is sent right away; the
+    // surrounding applyBatch sends its Batch when the transaction commits.
+    private void endBatch(Batch batch) {
+        if (batch != mBatch.get()) {
+            batch.close();
+            notifyChanges(batch);
+        }
+    }
+
+    /*
+        Runs the operations in one transaction and sends a single round of change notifications
+        once it has committed.  This is how callers group inserts, updates and deletes: build a
+        list of ContentProviderOperations and hand it to ContentResolver.applyBatch.
+
+        A weather insert in a batch takes the same path as bulkInsert, so a day that was already
+        stored comes back as the weather URI without its _id.  Don't back-reference those.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (mBatch.get() != null) {
+            // Nested; the outer batch commits and notifies for us.
+            return super.applyBatch(operations);
+        }
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Batch batch = new Batch();
+        ContentProviderResult[] results;
+        mBatch.set(batch);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            batch.close();
+            db.endTransaction();
+            mBatch.remove();
+        }
+        mOpenHelper.checkpointAfterBulkInsert(db);
+        notifyChanges(batch);
+        return results;
+    }
+
+    private void notifyChanges(Batch batch) {
+        ContentResolver resolver = getContext().getContentResolver();
+        if (batch.locations) {
+            resolver.notifyChange(WeatherContract.LocationEntry.CONTENT_URI, null);
+        }
+        if (batch.allWeather) {
+            resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            return;
+        }
+        if (batch.weatherLocationIds.isEmpty()) {
+            return;
+        }
+
+        // The weather URIs are built from location settings, so look those up.
+        StringBuilder ids = new StringBuilder();
+        for (Long locationId : batch.weatherLocationIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(locationId);
+        }
+        ArrayList<String> locationSettings = new ArrayList<>(batch.weatherLocationIds.size());
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[] {WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " IN (" + ids + ")",
+                null,
+                null,
+                null,
+                null);
+        while (cursor.moveToNext()) {
+            locationSettings.add(cursor.getString(0));
+        }
+        cursor.close();
+
+        if (locationSettings.size() < batch.weatherLocationIds.size()) {
+            // A location is gone already; we can't name its URI, so tell everybody.
+            resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            return;
+        }
+        for (String locationSetting : locationSettings) {
+            resolver.notifyChange(
+                    WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting), null);
+        }
+    }
+
+    // Returns the locations that have weather rows matching the selection.
+    private static ArrayList<Long> queryWeatherLocations(SQLiteDatabase db, String selection,
+                                                         String[] selectionArgs) {
+        ArrayList<Long> locationIds = new ArrayList<>();
+        Cursor cursor = db.query(true,
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[] {WeatherContract.WeatherEntry.COLUMN_LOC_KEY},
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null,
+                null);
+        while (cursor.moveToNext()) {
+            locationIds.add(cursor.getLong(0));
+        }
+        cursor.close();
+        return locationIds;
+    }
+
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
@@ -229,29 +417,39 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
-
-        switch (match) {
-            case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
-            }
-            case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+        Batch batch = beginBatch();
+
+        try {
+            switch (match) {
+                case WEATHER: {
+                    // A sync writes every day through applyBatch, and in steady state every day
+                    // is an update; looking their _ids up would cost a query each.
+                    boolean inBatch = batch == mBatch.get();
+                    long _id = upsertWeather(db, batch, values, !inBatch);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                    else if ( _id == 0 && inBatch )
+                        returnUri = uri;
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    batch.addWeatherLocation(values);
+                    break;
+                }
+                case LOCATION: {
+                    long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    batch.locations = true;
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
             }
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        } finally {
+            endBatch(batch);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
@@ -260,24 +458,32 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        Batch batch = beginBatch();
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
+                // Find out whose days are going before they're gone.
+                ArrayList<Long> locationIds = queryWeatherLocations(db, selection, selectionArgs);
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    batch.weatherLocationIds.addAll(locationIds);
+                }
                 break;
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                // Because a null deletes all rows
+                if (rowsDeleted != 0) {
+                    batch.locations = true;
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
+        endBatch(batch);
         return rowsDeleted;
     }
 
@@ -286,6 +492,8 @@ public class WeatherProvider extends ContentProvider {
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
             long dateValue = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
             values.put(WeatherContract.WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(dateValue));
+            // and keep the day it falls on next to it, for single day lookups
+            values.put(WeatherContract.WeatherEntry.COLUMN_EPOCH_DAY, WeatherContract.toEpochDay(dateValue));
         }
     }
 
@@ -295,53 +503,201 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
+        Batch batch = beginBatch();
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
+                ArrayList<Long> locationIds = queryWeatherLocations(db, selection, selectionArgs);
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    batch.weatherLocationIds.addAll(locationIds);
+                    if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)) {
+                        // The rows moved to another location, which changed too.
+                        batch.addWeatherLocation(values);
+                    }
+                }
                 break;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    batch.locations = true;
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
+        endBatch(batch);
         return rowsUpdated;
     }
 
+    // The columns the bulk upsert writes, in bind order.  The two key columns come last so the
+    // UPDATE and the INSERT below can share one bind routine.
+    private static final String[] UPSERT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+            WeatherContract.WeatherEntry.COLUMN_EPOCH_DAY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY
+    };
+    private static final int UPSERT_DATE_INDEX = UPSERT_COLUMNS.length - 2;
+
+    //UPDATE weather SET short_desc = ?, ... epoch_day = ? WHERE date = ? AND location_id = ?
+    private static final String sWeatherUpdateByDayAndLocation;
+
+    //INSERT INTO weather (short_desc, ... location_id) VALUES (?, ... ?)
+    private static final String sWeatherInsert;
+
+    static {
+        StringBuilder update = new StringBuilder("UPDATE ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" SET ");
+        StringBuilder insert = new StringBuilder("INSERT INTO ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" (");
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < UPSERT_COLUMNS.length; i++) {
+            if (i > 0) {
+                insert.append(", ");
+                placeholders.append(", ");
+            }
+            insert.append(UPSERT_COLUMNS[i]);
+            placeholders.append('?');
+            if (i < UPSERT_DATE_INDEX) {
+                if (i > 0) {
+                    update.append(", ");
+                }
+                update.append(UPSERT_COLUMNS[i]).append(" = ?");
+            }
+        }
+        update.append(" WHERE ").append(WeatherContract.WeatherEntry.COLUMN_DATE)
+                .append(" = ? AND ").append(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                .append(" = ?");
+        sWeatherUpdateByDayAndLocation = update.toString();
+        sWeatherInsert = insert.append(") VALUES (").append(placeholders).append(')').toString();
+    }
+
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                Batch batch = beginBatch();
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+                        if (upsertWeather(db, batch, value, false) != -1) {
+                            batch.addWeatherLocation(value);
                             returnCount++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
+                    endBatch(batch);
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                mOpenHelper.checkpointAfterBulkInsert(db);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /*
+        Writes a day by updating the row already stored for its (date, location) pair, and only
+        inserting when there isn't one.  Unlike a plain insert, which the ON CONFLICT REPLACE
+        constraint turns into a delete and a fresh AUTOINCREMENT id, this keeps the _id of every
+        day the forecast already had.  Rows with just the forecast columns go through statements
+        compiled once per Batch; anything else through ContentValues.
+
+        Returns the _id of the row, or -1 if it couldn't be written.  Finding the _id of an
+        updated row takes another query, so unless wantId is set updated rows just return 0.
+     */
+    private long upsertWeather(SQLiteDatabase db, Batch batch, ContentValues value,
+                               boolean wantId) {
+        // Normalized in place, as the callers have always seen their values come back.
+        normalizeDate(value);
+        String date = value.getAsString(WeatherContract.WeatherEntry.COLUMN_DATE);
+        String locationId = value.getAsString(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        if (date == null || locationId == null) {
+            // Without its key the day can't be matched; let the constraints reject it.
+            return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+        }
+
+        boolean updated;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && hasOnlyUpsertColumns(value)) {
+            SQLiteStatement update = batch.updateWeather(db);
+            bindUpsertColumns(update, value);
+            updated = executeUpdateDelete(update) > 0;
+            if (!updated) {
+                SQLiteStatement insert = batch.insertWeather(db);
+                bindUpsertColumns(insert, value);
+                return insert.executeInsert();
+            }
+        } else {
+            updated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                    sDayAndLocationSelection, new String[] {date, locationId}) > 0;
+            if (!updated) {
+                return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            }
+        }
+        if (!wantId) {
+            return 0;
+        }
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[] {WeatherContract.WeatherEntry._ID},
+                sDayAndLocationSelection,
+                new String[] {date, locationId},
+                null,
+                null,
+                null);
+        long _id = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        cursor.close();
+        return _id;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int executeUpdateDelete(SQLiteStatement statement) {
+        return statement.executeUpdateDelete();
+    }
+
+    private static boolean hasOnlyUpsertColumns(ContentValues value) {
+        if (value.size() != UPSERT_COLUMNS.length) {
+            return false;
+        }
+        for (String column : UPSERT_COLUMNS) {
+            if (value.get(column) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void bindUpsertColumns(SQLiteStatement statement, ContentValues value) {
+        for (int i = 0; i < UPSERT_COLUMNS.length; i++) {
+            // SQLiteStatement parameters are 1-based
+            int index = i + 1;
+            Object column = value.get(UPSERT_COLUMNS[i]);
+            if (column instanceof Double || column instanceof Float) {
+                statement.bindDouble(index, ((Number) column).doubleValue());
+            } else if (column instanceof Number) {
+                statement.bindLong(index, ((Number) column).longValue());
+            } else {
+                statement.bindString(index, column.toString());
+            }
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves the weather photos Muzei shows, scaled down and kept on disk by {@link #stage}.  The
+ * originals are several megabytes each; Muzei gets a copy cropped to the screen, which
+ * is downloaded once per photo rather than once per publish.
+ *
+ * Muzei reads the photos from its own process, so the provider is exported, read only, and
+ * serves nothing but the staged photos.
+ */
+public class WeatherArtProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherArtProvider.class.getSimpleName();
+
+    public static final String AUTHORITY = "com.example.android.sunshine.app.muzei";
+
+    private static final String STAGED_DIR = "muzei";
+    private static final String STAGED_PREFIX = "weather_";
+    private static final String STAGED_SUFFIX = ".jpg";
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Downloads a photo cropped and scaled down to the given size, unless it's already staged.
+     * Blocks; don't call it on the main thread.
+     *
+     * @return the URI to hand Muzei, or null if the photo couldn't be staged
+     */
+    static Uri stage(Context context, String imageUrl, int width, int height) {
+        String name = STAGED_PREFIX + Utility.sha1Hex(imageUrl + '@' + width + 'x' + height)
+                + STAGED_SUFFIX;
+        File file = new File(getStagedDir(context), name);
+        if (file.exists()) {
+            return buildUri(name);
+        }
+
+        long start = System.currentTimeMillis();
+        Bitmap bitmap;
+        try {
+            // Cropped to the screen, which is all Muzei shows.  We keep our own copy, so Glide
+            // needn't.
+            bitmap = Glide.with(context)
+                    .load(imageUrl)
+                    .asBitmap()
+                    .centerCrop()
+                    .diskCacheStrategy(DiskCacheStrategy.NONE)
+                    .skipMemoryCache(true)
+                    .into(width, height)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving " + imageUrl, e);
+            return null;
+        }
+
+        // Written next to the final file and renamed, so Muzei never reads half a photo.
+        File partial = new File(file.getPath() + ".partial");
+        try {
+            file.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(partial);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error staging " + imageUrl, e);
+            partial.delete();
+            return null;
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            return null;
+        }
+        Log.d(LOG_TAG, "Staged " + imageUrl + " at " + bitmap.getWidth() + "x"
+                + bitmap.getHeight() + " in " + (System.currentTimeMillis() - start) + "ms");
+        return buildUri(name);
+    }
+
+    /**
+     * @return whether the photo behind a URI from {@link #stage} is still on disk
+     */
+    static boolean isStaged(Context context, Uri uri) {
+        String name = getStagedName(uri);
+        return name != null && new File(getStagedDir(context), name).exists();
+    }
+
+    /**
+     * Deletes every staged photo but the one behind the given URI, which may be null to delete
+     * them all.  Call it once Muzei has been handed the current photo.
+     */
+    static void prune(Context context, Uri keep) {
+        String keepName = keep == null ? null : getStagedName(keep);
+        File[] files = getStagedDir(context).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().equals(keepName)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static File getStagedDir(Context context) {
+        return new File(context.getFilesDir(), STAGED_DIR);
+    }
+
+    private static Uri buildUri(String name) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(name)
+                .build();
+    }
+
+    // Returns null for anything that isn't one of our photos, paths outside the directory
+    // included.
+    private static String getStagedName(Uri uri) {
+        if (!AUTHORITY.equals(uri.getAuthority()) || uri.getPathSegments().size() != 1) {
+            return null;
+        }
+        String name = uri.getLastPathSegment();
+        if (!name.startsWith(STAGED_PREFIX) || !name.endsWith(STAGED_SUFFIX)
+                || name.indexOf('/') >= 0 || name.contains("..")) {
+            return null;
+        }
+        return name;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        String name = getStagedName(uri);
+        if (name == null || !"r".equals(mode)) {
+            throw new FileNotFoundException("No photo at " + uri + " for mode " + mode);
+        }
+        return ParcelFileDescriptor.open(new File(getStagedDir(getContext()), name),
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return getStagedName(uri) == null ? null : "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read only");
+    }
+}
@@ -16,12 +16,14 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
+import android.content.SharedPreferences;
 import android.net.Uri;
+import android.util.DisplayMetrics;
+import android.util.Log;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.CurrentConditionsCache;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
@@ -30,13 +32,13 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
+
+    // What was published last, so an update that doesn't change the picture publishes nothing.
+    private static final String PREFS_NAME = "muzei_source";
+    private static final String KEY_WEATHER_ID = "weather_id";
+    private static final String KEY_LOCATION = "location";
+    private static final String KEY_IMAGE_URI = "image_uri";
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -55,25 +57,58 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+        CurrentConditionsCache.Conditions conditions =
+                CurrentConditionsCache.getInstance(this).get(location);
+        if (conditions == null) {
+            return;
+        }
+
+        String imageUrl = Utility.getImageUrlForWeatherCondition(conditions.weatherId);
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl == null) {
+            return;
+        }
+
+        // Muzei asks for artwork when it's first pointed at us, whatever we published before.
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        if (reason != UPDATE_REASON_INITIAL
+                && isPublished(prefs, conditions.weatherId, location)) {
+            Log.d(LOG_TAG, "Conditions unchanged, not publishing");
+            return;
+        }
+
+        // The staged copy only has to cover the screen.  If it can't be staged, Muzei can
+        // still download the original.
+        DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+        Uri stagedUri = WeatherArtProvider.stage(this, imageUrl, displayMetrics.widthPixels,
+                displayMetrics.heightPixels);
+        Uri imageUri = stagedUri != null ? stagedUri : Uri.parse(imageUrl);
+        publishArtwork(new Artwork.Builder()
+                .imageUri(imageUri)
+                .title(conditions.description)
+                .byline(location)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
+        prefs.edit()
+                .putInt(KEY_WEATHER_ID, conditions.weatherId)
+                .putString(KEY_LOCATION, location)
+                .putString(KEY_IMAGE_URI, imageUri.toString())
+                .apply();
+        // Muzei has what it needs; earlier photos would only pile up.
+        WeatherArtProvider.prune(this, stagedUri);
+    }
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
-            }
+    /**
+     * @return whether Muzei is already showing the staged photo for these conditions
+     */
+    private boolean isPublished(SharedPreferences prefs, int weatherId, String location) {
+        if (getCurrentArtwork() == null
+                || prefs.getInt(KEY_WEATHER_ID, -1) != weatherId
+                || !location.equals(prefs.getString(KEY_LOCATION, null))) {
+            return false;
         }
-        cursor.close();
+        // An original published because staging failed is worth replacing.
+        String imageUri = prefs.getString(KEY_IMAGE_URI, null);
+        return imageUri != null && WeatherArtProvider.isStaged(this, Uri.parse(imageUri));
     }
 }
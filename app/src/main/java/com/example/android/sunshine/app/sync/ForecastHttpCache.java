@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Remembers the HTTP validators (ETag and Last-Modified) of the last forecast stored for each
+ * location, so the next sync can ask the server whether anything changed before downloading
+ * and parsing the whole forecast again.
+ *
+ * Validators are only reused for the same request URL and the same starting day, since the
+ * forecast rows are dated relative to the day they were fetched on.
+ */
+class ForecastHttpCache {
+    private static final String PREFS_NAME = "forecast_http_cache";
+
+    private static final String KEY_URL = "url_";
+    private static final String KEY_ETAG = "etag_";
+    private static final String KEY_LAST_MODIFIED = "last_modified_";
+    private static final String KEY_JULIAN_DAY = "julian_day_";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_MISSES = "misses";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private final SharedPreferences mPrefs;
+
+    ForecastHttpCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds If-None-Match/If-Modified-Since to the request if we hold validators for it.
+     * Must be called before the connection is opened.
+     *
+     * @return true if the request was made conditional
+     */
+    boolean applyValidators(HttpURLConnection connection, String locationSetting, int julianDay) {
+        String url = connection.getURL().toString();
+        if (!url.equals(mPrefs.getString(KEY_URL + locationSetting, null))
+                || julianDay != mPrefs.getInt(KEY_JULIAN_DAY + locationSetting, -1)) {
+            return false;
+        }
+        boolean conditional = false;
+        String etag = mPrefs.getString(KEY_ETAG + locationSetting, null);
+        if (etag != null) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+            conditional = true;
+        }
+        long lastModified = mPrefs.getLong(KEY_LAST_MODIFIED + locationSetting, 0);
+        if (lastModified != 0) {
+            connection.setIfModifiedSince(lastModified);
+            conditional = true;
+        }
+        return conditional;
+    }
+
+    /**
+     * The validators a forecast response was served with.
+     */
+    static final class Validators {
+        final String url;
+        final String etag;
+        final long lastModified;
+
+        Validators(HttpURLConnection connection) {
+            url = connection.getURL().toString();
+            etag = connection.getHeaderField(HEADER_ETAG);
+            lastModified = connection.getLastModified();
+        }
+    }
+
+    /**
+     * Stores the validators of a response whose forecast has been written to the database.
+     */
+    void storeValidators(Validators validators, String locationSetting, int julianDay) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (validators.etag == null && validators.lastModified == 0) {
+            // Nothing we can revalidate with next time.
+            removeValidators(editor, locationSetting);
+        } else {
+            editor.putString(KEY_URL + locationSetting, validators.url);
+            editor.putInt(KEY_JULIAN_DAY + locationSetting, julianDay);
+            editor.putString(KEY_ETAG + locationSetting, validators.etag);
+            editor.putLong(KEY_LAST_MODIFIED + locationSetting, validators.lastModified);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Forgets the validators for a location, forcing the next sync to download it in full.
+     */
+    void clear(String locationSetting) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        removeValidators(editor, locationSetting);
+        editor.apply();
+    }
+
+    private static void removeValidators(SharedPreferences.Editor editor, String locationSetting) {
+        editor.remove(KEY_URL + locationSetting)
+                .remove(KEY_JULIAN_DAY + locationSetting)
+                .remove(KEY_ETAG + locationSetting)
+                .remove(KEY_LAST_MODIFIED + locationSetting);
+    }
+
+    // Locations may be fetched in parallel, so the read-modify-write of the counters is locked.
+    synchronized void recordHit() {
+        mPrefs.edit().putLong(KEY_HITS, getHitCount() + 1).apply();
+    }
+
+    synchronized void recordMiss() {
+        mPrefs.edit().putLong(KEY_MISSES, getMissCount() + 1).apply();
+    }
+
+    /**
+     * @return the number of syncs answered with 304 Not Modified
+     */
+    long getHitCount() {
+        return mPrefs.getLong(KEY_HITS, 0);
+    }
+
+    /**
+     * @return the number of syncs that downloaded and parsed a full forecast
+     */
+    long getMissCount() {
+        return mPrefs.getLong(KEY_MISSES, 0);
+    }
+}
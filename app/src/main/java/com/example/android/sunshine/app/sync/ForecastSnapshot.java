@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.shared.WearForecast;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The preferred location's forecast as a sync just stored it, starting today.  It can't be
+ * changed, so it's safe to hand to several threads at once.
+ */
+public final class ForecastSnapshot {
+    // Keys of the saved form, see toJson().
+    private static final String JSON_LOCATION = "location";
+    private static final String JSON_METRIC = "metric";
+    private static final String JSON_DATES = "dates";
+    private static final String JSON_WEATHER_IDS = "weather_ids";
+    private static final String JSON_HIGHS = "highs";
+    private static final String JSON_LOWS = "lows";
+    private static final String JSON_DESCRIPTIONS = "descriptions";
+
+    public final String locationSetting;
+    // Whether the user wanted Celsius when the snapshot was taken.
+    public final boolean metric;
+
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+    private final String[] mDescriptions;
+
+    private ForecastSnapshot(String locationSetting, boolean metric, int size) {
+        this.locationSetting = locationSetting;
+        this.metric = metric;
+        mDates = new long[size];
+        mWeatherIds = new int[size];
+        mHighs = new double[size];
+        mLows = new double[size];
+        mDescriptions = new String[size];
+    }
+
+    ForecastSnapshot(String locationSetting, boolean metric, List<ContentValues> days) {
+        this(locationSetting, metric, days.size());
+        for (int i = 0; i < days.size(); i++) {
+            ContentValues day = days.get(i);
+            mDates[i] = day.getAsLong(WeatherEntry.COLUMN_DATE);
+            mWeatherIds[i] = day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            mHighs[i] = day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            mLows[i] = day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            mDescriptions[i] = day.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        }
+    }
+
+    public int size() {
+        return mDates.length;
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    public double getHigh(int index) {
+        return mHighs[index];
+    }
+
+    public double getLow(int index) {
+        return mLows[index];
+    }
+
+    public String getDescription(int index) {
+        return mDescriptions[index];
+    }
+
+    /**
+     * @return true if today looks the same in both, temperatures and units included
+     */
+    public boolean sameTodayAs(ForecastSnapshot other) {
+        return other != null && size() > 0 && other.size() > 0
+                && locationSetting.equals(other.locationSetting)
+                && metric == other.metric
+                && mDates[0] == other.mDates[0]
+                && mWeatherIds[0] == other.mWeatherIds[0]
+                && mHighs[0] == other.mHighs[0]
+                && mLows[0] == other.mLows[0]
+                && TextUtils.equals(mDescriptions[0], other.mDescriptions[0]);
+    }
+
+    /**
+     * @return true if every day looks the same in both
+     */
+    public boolean sameDaysAs(ForecastSnapshot other) {
+        return other != null
+                && locationSetting.equals(other.locationSetting)
+                && metric == other.metric
+                && Arrays.equals(mDates, other.mDates)
+                && Arrays.equals(mWeatherIds, other.mWeatherIds)
+                && Arrays.equals(mHighs, other.mHighs)
+                && Arrays.equals(mLows, other.mLows)
+                && Arrays.equals(mDescriptions, other.mDescriptions);
+    }
+
+    /**
+     * Packs every day for the watch face, which picks out the current day itself.
+     */
+    public WearForecast toWearForecast() {
+        WearForecast.Builder builder = new WearForecast.Builder(metric, size());
+        for (int i = 0; i < size(); i++) {
+            builder.addDay(WeatherContract.toEpochDay(mDates[i]), mWeatherIds[i], mHighs[i],
+                    mLows[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the snapshot in a form that can be saved, and read back with {@link #fromJson}
+     */
+    String toJson() {
+        try {
+            JSONArray dates = new JSONArray();
+            JSONArray weatherIds = new JSONArray();
+            JSONArray highs = new JSONArray();
+            JSONArray lows = new JSONArray();
+            JSONArray descriptions = new JSONArray();
+            for (int i = 0; i < size(); i++) {
+                dates.put(mDates[i]);
+                weatherIds.put(mWeatherIds[i]);
+                highs.put(mHighs[i]);
+                lows.put(mLows[i]);
+                descriptions.put(mDescriptions[i] == null ? JSONObject.NULL : mDescriptions[i]);
+            }
+            return new JSONObject()
+                    .put(JSON_LOCATION, locationSetting)
+                    .put(JSON_METRIC, metric)
+                    .put(JSON_DATES, dates)
+                    .put(JSON_WEATHER_IDS, weatherIds)
+                    .put(JSON_HIGHS, highs)
+                    .put(JSON_LOWS, lows)
+                    .put(JSON_DESCRIPTIONS, descriptions)
+                    .toString();
+        } catch (JSONException e) {
+            // Only thrown for temperatures that aren't numbers.
+            return null;
+        }
+    }
+
+    /**
+     * @return the snapshot saved with {@link #toJson}, or null if there's none or it can't be read
+     */
+    static ForecastSnapshot fromJson(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            JSONObject object = new JSONObject(json);
+            JSONArray dates = object.getJSONArray(JSON_DATES);
+            JSONArray weatherIds = object.getJSONArray(JSON_WEATHER_IDS);
+            JSONArray highs = object.getJSONArray(JSON_HIGHS);
+            JSONArray lows = object.getJSONArray(JSON_LOWS);
+            JSONArray descriptions = object.getJSONArray(JSON_DESCRIPTIONS);
+            ForecastSnapshot snapshot = new ForecastSnapshot(object.getString(JSON_LOCATION),
+                    object.getBoolean(JSON_METRIC), dates.length());
+            for (int i = 0; i < dates.length(); i++) {
+                snapshot.mDates[i] = dates.getLong(i);
+                snapshot.mWeatherIds[i] = weatherIds.getInt(i);
+                snapshot.mHighs[i] = highs.getDouble(i);
+                snapshot.mLows[i] = lows.getDouble(i);
+                snapshot.mDescriptions[i] = descriptions.isNull(i) ? null : descriptions.getString(i);
+            }
+            return snapshot;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+}
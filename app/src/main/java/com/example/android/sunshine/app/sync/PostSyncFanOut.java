@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells everything that shows the forecast outside the app (widgets, Muzei, the notification,
+ * the wearable) about a newly stored forecast.  Every consumer gets the same
+ * {@link ForecastSnapshot}, they all run at the same time, and a consumer whose part of the
+ * forecast hasn't changed since the last snapshot it handled is skipped.  That snapshot is only
+ * recorded once the consumer is done with it, so one that failed gets the next sync's snapshot
+ * whether or not it changed.  It's saved, so this still holds for the first sync after the
+ * process was restarted.
+ */
+class PostSyncFanOut {
+    private static final String LOG_TAG = PostSyncFanOut.class.getSimpleName();
+
+    // Upper bound on the number of consumers run at the same time.
+    private static final int MAX_PARALLEL_CONSUMERS = 4;
+    // Syncs are hours apart, so the threads don't hang around in between.
+    private static final long IDLE_THREAD_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    // Followed by the consumer's name.
+    private static final String KEY_PREVIOUS_PREFIX = "previous_snapshot/";
+
+    interface Consumer {
+        String getName();
+
+        /**
+         * @param previous the snapshot this consumer last handled, or null if there's none
+         * @return whether the consumer has anything to do for the new snapshot
+         */
+        boolean hasChanged(ForecastSnapshot previous, ForecastSnapshot snapshot);
+
+        void consume(ForecastSnapshot snapshot);
+    }
+
+    /**
+     * How long a consumer took with the last snapshot.
+     */
+    static final class Timing {
+        final String consumer;
+        final boolean skipped;
+        final long millis;
+
+        Timing(String consumer, boolean skipped, long millis) {
+            this.consumer = consumer;
+            this.skipped = skipped;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return consumer + (skipped ? " skipped" : " " + millis + "ms");
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+    private final List<Consumer> mConsumers;
+    private final ThreadPoolExecutor mExecutor;
+    // Guarded by itself.  The snapshot each consumer last handled, by name.  Read from mPrefs
+    // the first time it's needed.
+    private final HashMap<String, ForecastSnapshot> mPrevious =
+            new HashMap<String, ForecastSnapshot>();
+    // Only touched by dispatch(), which syncs call one at a time.
+    private boolean mPreviousLoaded;
+    private volatile List<Timing> mLastTimings = Collections.emptyList();
+
+    /**
+     * @param prefs where the snapshot each consumer last handled is kept between processes
+     */
+    PostSyncFanOut(SharedPreferences prefs, List<Consumer> consumers) {
+        mPrefs = prefs;
+        mConsumers = consumers;
+        int threads = Math.min(MAX_PARALLEL_CONSUMERS, consumers.size());
+        mExecutor = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_TIMEOUT_MS,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Hands the snapshot to every consumer whose part of it changed, and waits for them all.
+     * A consumer that throws is logged; the others still run.
+     */
+    synchronized List<Timing> dispatch(final ForecastSnapshot snapshot) {
+        if (!mPreviousLoaded) {
+            loadPrevious();
+            mPreviousLoaded = true;
+        }
+        final String json = snapshot.toJson();
+        ArrayList<Future<Timing>> results = new ArrayList<Future<Timing>>(mConsumers.size());
+        for (final Consumer consumer : mConsumers) {
+            final ForecastSnapshot previous;
+            synchronized (mPrevious) {
+                previous = mPrevious.get(consumer.getName());
+            }
+            results.add(mExecutor.submit(new Callable<Timing>() {
+                @Override
+                public Timing call() {
+                    long start = SystemClock.elapsedRealtime();
+                    if (!consumer.hasChanged(previous, snapshot)) {
+                        return new Timing(consumer.getName(), true, 0);
+                    }
+                    consumer.consume(snapshot);
+                    // Recorded here rather than once they're all done, so a consumer still
+                    // running when the sync is cancelled is recorded when it finishes.
+                    synchronized (mPrevious) {
+                        mPrevious.put(consumer.getName(), snapshot);
+                    }
+                    mPrefs.edit()
+                            .putString(KEY_PREVIOUS_PREFIX + consumer.getName(), json)
+                            .apply();
+                    return new Timing(consumer.getName(), false,
+                            SystemClock.elapsedRealtime() - start);
+                }
+            }));
+        }
+
+        ArrayList<Timing> timings = new ArrayList<Timing>(mConsumers.size());
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    timings.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, mConsumers.get(i).getName() + " failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled; the consumers already running finish on their own.
+            Log.d(LOG_TAG, "Sync interrupted while updating consumers");
+            Thread.currentThread().interrupt();
+        }
+
+        mLastTimings = Collections.unmodifiableList(timings);
+        Log.d(LOG_TAG, "Forecast handed out: " + timings);
+        return mLastTimings;
+    }
+
+    private void loadPrevious() {
+        synchronized (mPrevious) {
+            for (Consumer consumer : mConsumers) {
+                ForecastSnapshot previous = ForecastSnapshot.fromJson(
+                        mPrefs.getString(KEY_PREVIOUS_PREFIX + consumer.getName(), null));
+                if (previous != null) {
+                    mPrevious.put(consumer.getName(), previous);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how long each consumer took with the last snapshot
+     */
+    List<Timing> getLastTimings() {
+        return mLastTimings;
+    }
+
+    /**
+     * Stops the consumer threads.  Only for tests; the sync keeps its fan-out for good.
+     */
+    void shutdown() {
+        mExecutor.shutdownNow();
+    }
+}
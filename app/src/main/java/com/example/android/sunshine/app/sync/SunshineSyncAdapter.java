@@ -7,11 +7,12 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,10 +23,9 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
@@ -35,19 +35,14 @@ import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.CurrentConditionsCache;
+import com.example.android.sunshine.app.data.LocationCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
-
-import org.json.JSONArray;
+import com.example.android.sunshine.app.widget.DetailWidgetProvider;
+import com.example.android.sunshine.app.widget.TodayWidgetProvider;
+
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -57,12 +52,16 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.example.android.sunshine.app.Utility.getIconResourceForWeatherCondition;
 
-public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
+public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
@@ -73,67 +72,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    /**
+     * Sync extra that makes the sync refresh every location in the location table instead of
+     * only the preferred one.
+     */
+    public static final String SYNC_EXTRAS_ALL_LOCATIONS = "sunshine_all_locations";
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-    private GoogleApiClient mGoogleApiClient;
-    private Context mContext;
-
-    private double mHighTemp;
-    private double mLowTemp;
-    private int mWeatherId;
-
-    @Override
-    public void onConnected(@Nullable Bundle bundle) {
-        Log.d(LOG_TAG, "GoogleApi connected");
-
-        String highTempString = Utility.formatTemperature(mContext, mHighTemp);
-        String lowTempString = Utility.formatTemperature(mContext, mLowTemp);
-
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create("/sunshine-forecast");
-        putDataMapRequest.getDataMap().putString("high-temp", highTempString);
-        putDataMapRequest.getDataMap().putString("low-temp", lowTempString);
-        putDataMapRequest.getDataMap().putInt("weatherId", mWeatherId);
-        putDataMapRequest.getDataMap().putLong("time",System.currentTimeMillis()); //Per recommendation in Udacity forum to ensure data refreshes with each send: https://discussions.udacity.com/t/ubiquitous-problem/201048/3
-
-        PutDataRequest request = putDataMapRequest.asPutDataRequest();
-        putDataMapRequest.setUrgent();
-        request.setUrgent();
-
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                        if(!dataItemResult.getStatus().isSuccess()){
-                            Log.d(LOG_TAG, "Error sending to wearable");
-                        } else {
-                            // Data sent successfully
-                            Log.d(LOG_TAG, "Forecast successfully sent to wearable");
-                            mGoogleApiClient.disconnect();
-                        }
-                    }
-                });
-    }
+    // Upper bound on the number of forecasts downloaded at the same time.
+    private static final int MAX_PARALLEL_FETCHES = 4;
 
-    @Override
-    public void onConnectionSuspended(int i) {
-        Log.d(LOG_TAG, "GoogleApi connection suspended");
-    }
+    private static final String FAN_OUT_PREFS_NAME = "post_sync_fan_out";
 
-    @Override
-    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-        Log.d(LOG_TAG, "GoogleApi connection failed");
-    }
+    private Context mContext;
+    private final ForecastHttpCache mHttpCache;
+    private final LocationCache mLocationCache;
+    private final WearablePublisher mWearablePublisher;
+    private final PostSyncFanOut mFanOut;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -145,8 +99,38 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    public SunshineSyncAdapter(Context context, boolean autoInitialize) {
+    public SunshineSyncAdapter(Context context, boolean autoInitialize,
+                               WearablePublisher wearablePublisher) {
         super(context, autoInitialize);
+        mHttpCache = new ForecastHttpCache(context);
+        mLocationCache = LocationCache.getInstance(context);
+        mWearablePublisher = wearablePublisher;
+        mFanOut = new PostSyncFanOut(
+                context.getSharedPreferences(FAN_OUT_PREFS_NAME, Context.MODE_PRIVATE),
+                createConsumers());
+    }
+
+    /**
+     * Everything a sync needs to know about one location, and what became of it.
+     */
+    private static final class LocationSync {
+        final String locationSetting;
+        // When set, the forecast is requested by coordinates instead of by the setting string.
+        final String latitude;
+        final String longitude;
+        // The row id in the location table, or -1 if it isn't known yet.
+        long locationId = -1;
+
+        @LocationStatus int status = LOCATION_STATUS_UNKNOWN;
+        boolean notModified;
+        ForecastJsonParser.Forecast forecast;
+        ForecastHttpCache.Validators validators;
+
+        LocationSync(String locationSetting, String latitude, String longitude) {
+            this.locationSetting = locationSetting;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
     }
 
     @Override
@@ -157,26 +141,87 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         // longitude, in case we are syncing based on a new Place Picker API result.
         mContext = getContext();
         String locationQuery = Utility.getPreferredLocation(mContext);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(mContext));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(mContext));
+        LocationSync preferred;
+        if (Utility.isLocationLatLonAvailable(mContext)) {
+            preferred = new LocationSync(locationQuery,
+                    String.valueOf(Utility.getLocationLatitude(mContext)),
+                    String.valueOf(Utility.getLocationLongitude(mContext)));
+        } else {
+            preferred = new LocationSync(locationQuery, null, null);
+        }
+
+        ArrayList<LocationSync> locations = new ArrayList<LocationSync>();
+        locations.add(preferred);
+        if (extras.getBoolean(SYNC_EXTRAS_ALL_LOCATIONS, false)) {
+            addTrackedLocations(locations, preferred);
+        }
+
+        int julianStartDay = ForecastJsonParser.getJulianStartDay();
+        fetchForecasts(locations, julianStartDay);
+        storeForecasts(locations, preferred, julianStartDay);
+    }
 
-        // Setup the DataAPI for mobile
-        mGoogleApiClient = new GoogleApiClient.Builder(mContext)
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
+    /**
+     * Adds every other location in the location table to the sync.  These are requested by the
+     * coordinates OpenWeatherMap gave us for them the first time around.
+     */
+    private void addTrackedLocations(ArrayList<LocationSync> locations, LocationSync preferred) {
+        for (LocationCache.Location tracked : mLocationCache.getAll()) {
+            if (preferred.locationSetting.equals(tracked.locationSetting)) {
+                preferred.locationId = tracked.id;
+                continue;
+            }
+            LocationSync location = new LocationSync(tracked.locationSetting,
+                    String.valueOf(tracked.latitude),
+                    String.valueOf(tracked.longitude));
+            location.locationId = tracked.id;
+            locations.add(location);
+        }
+    }
 
+    /**
+     * Downloads and parses the forecast of every location.  A single location is fetched on the
+     * sync thread; several are fetched concurrently, so the wait is bounded by the slowest one.
+     */
+    private void fetchForecasts(List<LocationSync> locations, final int julianStartDay) {
+        if (locations.size() == 1) {
+            fetchForecast(locations.get(0), julianStartDay);
+            return;
+        }
 
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_PARALLEL_FETCHES, locations.size()));
+        ArrayList<Callable<Void>> fetches = new ArrayList<Callable<Void>>(locations.size());
+        for (final LocationSync location : locations) {
+            fetches.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    fetchForecast(location, julianStartDay);
+                    return null;
+                }
+            });
+        }
+        try {
+            executor.invokeAll(fetches);
+        } catch (InterruptedException e) {
+            // The sync was cancelled; whatever finished will still be stored.
+            Log.d(LOG_TAG, "Sync interrupted while fetching forecasts");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
+    /**
+     * Downloads and parses the forecast for one location.  Failures are recorded on the location
+     * rather than thrown, so one bad location doesn't cost the others their update.
+     */
+    private void fetchForecast(LocationSync location, int julianStartDay) {
         // These two need to be declared outside the try/catch
         // so that they can be closed in the finally block.
         HttpURLConnection urlConnection = null;
         BufferedReader reader = null;
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
         String format = "json";
         String units = "metric";
         int numDays = 14;
@@ -203,11 +248,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
             // service may not understand the location address provided by the Place Picker API
             // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(mContext)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
+            if (location.latitude != null && location.longitude != null) {
+                uriBuilder.appendQueryParameter(LAT_PARAM, location.latitude)
+                        .appendQueryParameter(LON_PARAM, location.longitude);
             } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+                uriBuilder.appendQueryParameter(QUERY_PARAM, location.locationSetting);
             }
 
             // In order to use this application, you must add a string to strings.xml with the name=open_weather_api_key containing your api key
@@ -224,41 +269,63 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
+
+            // If what we stored last time is still in the database, only ask for the forecast
+            // when it has changed upstream.
+            if (hasForecastForToday(location.locationSetting)) {
+                mHttpCache.applyValidators(urlConnection, location.locationSetting, julianStartDay);
+            }
             urlConnection.connect();
 
-            // Read the input stream into a String
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing changed, so there is nothing to parse, store or tell anybody about.
+                mHttpCache.recordHit();
+                location.notModified = true;
+                return;
+            }
+            mHttpCache.recordMiss();
+
             InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
             if (inputStream == null) {
                 // Nothing to do.
                 return;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
+            ForecastJsonParser.Forecast forecast;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Pull the forecast straight off the connection, one day at a time.
+                forecast = ForecastJsonParser.parse(inputStream, julianStartDay);
+            } else {
+                // Read the input stream into a String
+                StringBuilder buffer = new StringBuilder();
+                reader = new BufferedReader(new InputStreamReader(inputStream));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                    // But it does make debugging a *lot* easier if you print out the completed
+                    // buffer for debugging.
+                    buffer.append(line).append('\n');
+                }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+                if (buffer.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    location.status = LOCATION_STATUS_SERVER_DOWN;
+                    return;
+                }
+                forecast = ForecastJsonParser.parse(buffer.toString(), julianStartDay);
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            location.forecast = forecast;
+            location.validators = new ForecastHttpCache.Validators(urlConnection);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            location.status = LOCATION_STATUS_SERVER_DOWN;
         } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            // The server answered, but not with a forecast we can read.
+            Log.e(LOG_TAG, "Invalid forecast for " + location.locationSetting, e);
+            location.status = LOCATION_STATUS_SERVER_INVALID;
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -271,322 +338,365 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 }
             }
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Take the parsed forecasts, attach them to their locations and write all of them to the
+     * database in a single bulk insert.  Then record how each location fared.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @param locations every location that was fetched in this sync
+     * @param preferred the user's preferred location, which drives the widgets and notifications
+     * @param julianStartDay the julian day the first forecast day was assigned to
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
+    private void storeForecasts(List<LocationSync> locations, LocationSync preferred,
+                                int julianStartDay) {
+        ArrayList<ContentValues> cVVector = new ArrayList<ContentValues>();
+        for (LocationSync location : locations) {
+            if (location.notModified) {
+                location.status = LOCATION_STATUS_OK;
+                continue;
+            }
+            if (location.forecast == null) {
+                // Already failed while fetching.
+                continue;
+            }
 
             // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+            switch (location.forecast.messageCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    location.status = LOCATION_STATUS_INVALID;
+                    continue;
+                default:
+                    location.status = LOCATION_STATUS_SERVER_DOWN;
+                    continue;
             }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+            long locationId = location.locationId;
+            if (locationId == -1) {
+                locationId = addLocation(location.locationSetting, location.forecast.cityName,
+                        location.forecast.cityLatitude, location.forecast.cityLongitude);
+            }
+            for (ContentValues weatherValues : location.forecast.days) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                cVVector.add(weatherValues);
+            }
+            location.status = LOCATION_STATUS_OK;
+        }
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+        // add to database
+        if ( cVVector.size() > 0 ) {
+            boolean preferredChanged = preferred.forecast != null
+                    && preferred.status == LOCATION_STATUS_OK
+                    && !preferred.forecast.days.isEmpty();
+            // Every location's days and the clean-up below go in one batch: one transaction,
+            // and the screens of each location that changed are told about it once.
+            ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>(cVVector.size() + 1);
+            for (ContentValues weatherValues : cVVector) {
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(weatherValues)
+                        .build());
+            }
 
+            // delete old data so we don't build up an endless history
             Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                            new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))})
+                    .build());
+
+            try {
+                getContext().getContentResolver().applyBatch(
+                        WeatherContract.CONTENT_AUTHORITY, operations);
+            } catch (RemoteException | OperationApplicationException e) {
+                Log.e(LOG_TAG, "Error storing forecasts", e);
+                // Nothing was stored, so don't claim otherwise.
+                for (LocationSync location : locations) {
+                    if (location.forecast != null && location.status == LOCATION_STATUS_OK) {
+                        location.status = LOCATION_STATUS_UNKNOWN;
+                    }
+                }
+                preferredChanged = false;
+            }
+            // The provider's change notification reaches the cache asynchronously, maybe only
+            // after the widgets and Muzei have been told to update and read from it.
+            CurrentConditionsCache.getInstance(getContext()).invalidate();
+
+            // The widgets, Muzei, the notification and the wearable only ever show the preferred
+            // location.
+            if (preferredChanged) {
+                mFanOut.dispatch(new ForecastSnapshot(preferred.locationSetting,
+                        Utility.isMetric(getContext()), preferred.forecast.days));
+            }
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted for " + locations.size()
+                + " location(s), " + mHttpCache.getHitCount() + " not modified and "
+                + mHttpCache.getMissCount() + " downloaded so far");
+
+        for (LocationSync location : locations) {
+            if (location.validators != null && location.status == LOCATION_STATUS_OK) {
+                mHttpCache.storeValidators(location.validators, location.locationSetting,
+                        julianStartDay);
+            } else if (!location.notModified) {
+                mHttpCache.clear(location.locationSetting);
+            }
+            setLocationStatus(getContext(), location.locationSetting, location.status);
+        }
+        // The UI reports on the preferred location only.
+        if (Utility.getLocationStatus(getContext()) != preferred.status) {
+            setLocationStatus(getContext(), preferred.status);
+        }
+    }
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+    /**
+     * Checks whether today's forecast for the location is still in the database.  Stored
+     * validators are only trustworthy while the rows they describe are still around.
+     */
+    private boolean hasForecastForToday(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
+    }
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+    private List<PostSyncFanOut.Consumer> createConsumers() {
+        ArrayList<PostSyncFanOut.Consumer> consumers = new ArrayList<PostSyncFanOut.Consumer>();
+        consumers.add(new PostSyncFanOut.Consumer() {
+            @Override
+            public String getName() {
+                return "today widget";
+            }
 
-                ContentValues weatherValues = new ContentValues();
+            @Override
+            public boolean hasChanged(ForecastSnapshot previous, ForecastSnapshot snapshot) {
+                return !snapshot.sameTodayAs(previous);
+            }
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+            @Override
+            public void consume(ForecastSnapshot snapshot) {
+                shareTodaysConditions(snapshot);
+                updateWidgets(TodayWidgetProvider.class);
+            }
+        });
+        consumers.add(new PostSyncFanOut.Consumer() {
+            @Override
+            public String getName() {
+                return "detail widget";
+            }
 
-                cVVector.add(weatherValues);
+            @Override
+            public boolean hasChanged(ForecastSnapshot previous, ForecastSnapshot snapshot) {
+                return !snapshot.sameDaysAs(previous);
+            }
 
-                //For sending data to wearable
+            @Override
+            public void consume(ForecastSnapshot snapshot) {
+                updateWidgets(DetailWidgetProvider.class);
+            }
+        });
+        consumers.add(new PostSyncFanOut.Consumer() {
+            @Override
+            public String getName() {
+                return "muzei";
+            }
 
-                if(i==0){
-                    mHighTemp = high;
-                    mLowTemp = low;
-                    mWeatherId = weatherId;
-                    mGoogleApiClient.connect();
-                }
+            @Override
+            public boolean hasChanged(ForecastSnapshot previous, ForecastSnapshot snapshot) {
+                // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to
+                // update the Muzei background on lower API level devices.  WeatherMuzeiSource
+                // itself decides whether what it last published is still current.
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
             }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+            @Override
+            public void consume(ForecastSnapshot snapshot) {
+                shareTodaysConditions(snapshot);
+                updateMuzei();
+            }
+        });
+        consumers.add(new PostSyncFanOut.Consumer() {
+            @Override
+            public String getName() {
+                return "notification";
+            }
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+            @Override
+            public boolean hasChanged(ForecastSnapshot previous, ForecastSnapshot snapshot) {
+                // There's at most one a day, whatever the weather does.
+                return snapshot.size() > 0 && isNotificationDue();
+            }
 
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+            @Override
+            public void consume(ForecastSnapshot snapshot) {
+                notifyWeather(snapshot);
+            }
+        });
+        consumers.add(new PostSyncFanOut.Consumer() {
+            @Override
+            public String getName() {
+                return "wearable";
+            }
 
-                // send the data to the wearable DataAPI here
-//                sendForecasetToWearables(cVVector.get(0));
+            @Override
+            public boolean hasChanged(ForecastSnapshot previous, ForecastSnapshot snapshot) {
+                return !snapshot.sameDaysAs(previous);
+            }
 
+            @Override
+            public void consume(ForecastSnapshot snapshot) {
+                // Only queued here; the publisher connects and sends on its own thread.
+                mWearablePublisher.publish(snapshot.toWearForecast().toByteArray());
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        });
+        return consumers;
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    /**
+     * Puts the snapshot's first day where the Today widget and Muzei look for it, so they don't
+     * query the provider for what the sync just wrote.  The detail widget lists every day
+     * through its own cursor, and still reads them from the provider.
+     */
+    private void shareTodaysConditions(ForecastSnapshot snapshot) {
+        if (snapshot.size() == 0) {
+            return;
         }
+        CurrentConditionsCache.getInstance(getContext()).put(snapshot.locationSetting,
+                snapshot.getDate(0), snapshot.getWeatherId(0), snapshot.getDescription(0),
+                snapshot.getHigh(0), snapshot.getLow(0));
     }
 
-
-    private void updateWidgets() {
+    private void updateWidgets(Class<?> widgetProvider) {
         Context context = getContext();
-        // Setting the package ensures that only components in our app will receive the broadcast
+        // Naming the provider ensures that only that widget in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
-                .setPackage(context.getPackageName());
+                .setClass(context, widgetProvider);
         context.sendBroadcast(dataUpdatedIntent);
     }
 
     private void updateMuzei() {
-        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
-        // Muzei background on lower API level devices
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
-            context.startService(new Intent(ACTION_DATA_UPDATED)
-                    .setClass(context, WeatherMuzeiSource.class));
-        }
+        Context context = getContext();
+        context.startService(new Intent(ACTION_DATA_UPDATED)
+                .setClass(context, WeatherMuzeiSource.class));
     }
 
-    private void notifyWeather() {
+    /**
+     * @return whether notifications are on and the last one was more than a day ago
+     */
+    private boolean isNotificationDue() {
         Context context = getContext();
-        //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
         boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
                 Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        if (!displayNotifications) {
+            return false;
+        }
+        String lastNotificationKey = context.getString(R.string.pref_last_notification);
+        long lastSync = prefs.getLong(lastNotificationKey, 0);
+        return System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS;
+    }
 
-        if ( displayNotifications ) {
-
-            String lastNotificationKey = context.getString(R.string.pref_last_notification);
-            long lastSync = prefs.getLong(lastNotificationKey, 0);
-
-            if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
-                // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
-                }
-                cursor.close();
-            }
+    /**
+     * Notifies the user of today's weather.  Only call when {@link #isNotificationDue()}.
+     */
+    private void notifyWeather(ForecastSnapshot snapshot) {
+        Context context = getContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastNotificationKey = context.getString(R.string.pref_last_notification);
+
+        // Today is the first day of the snapshot, so there's nothing to query.
+        int weatherId = snapshot.getWeatherId(0);
+        double high = snapshot.getHigh(0);
+        double low = snapshot.getLow(0);
+        String desc = snapshot.getDescription(0);
+
+        int iconId = getIconResourceForWeatherCondition(weatherId);
+        Resources resources = context.getResources();
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+        // Retrieve the large icon.  This blocks, but only the notification's own thread.
+        Bitmap largeIcon;
+        try {
+            largeIcon = Glide.with(context)
+                    .load(artUrl)
+                    .asBitmap()
+                    .error(artResourceId)
+                    .fitCenter()
+                    .into(largeIconWidth, largeIconHeight).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
         }
+        String title = context.getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(context.getString(R.string.format_notification),
+                desc,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder mBuilder =
+                new NotificationCompat.Builder(getContext())
+                        .setColor(resources.getColor(R.color.primary_light))
+                        .setSmallIcon(iconId)
+                        .setLargeIcon(largeIcon)
+                        .setContentTitle(title)
+                        .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(context, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addNextIntent(resultIntent);
+        PendingIntent resultPendingIntent =
+                stackBuilder.getPendingIntent(
+                        0,
+                        PendingIntent.FLAG_UPDATE_CURRENT
+                );
+        mBuilder.setContentIntent(resultPendingIntent);
+
+        NotificationManager mNotificationManager =
+                (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+
+        //refreshing last sync
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putLong(lastNotificationKey, System.currentTimeMillis());
+        editor.commit();
     }
 
     /**
@@ -599,44 +709,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
      * @return the row ID of the added location.
      */
     long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+        // Once a location is stored, the cache answers this without going to the provider.
+        return mLocationCache.getOrInsert(locationSetting, cityName, lat, lon).id;
     }
 
     /**
@@ -670,6 +744,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter refresh every tracked location immediately
+     * @param context The mContext used to access the account service
+     */
+    public static void syncAllLocationsImmediately(Context context) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putBoolean(SYNC_EXTRAS_ALL_LOCATIONS, true);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -742,4 +829,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.commit();
     }
+
+    /**
+     * Sets the status of one particular location into shared preference.  This function should
+     * not be called from the UI thread because it uses commit to write to the shared preferences.
+     * @param c Context to get the PreferenceManager from.
+     * @param locationSetting The location the status belongs to
+     * @param locationStatus The IntDef value to set
+     */
+    static private void setLocationStatus(Context c, String locationSetting,
+                                          @LocationStatus int locationStatus){
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        SharedPreferences.Editor spe = sp.edit();
+        spe.putInt(Utility.getLocationStatusKey(c, locationSetting), locationStatus);
+        spe.commit();
+    }
 }
\ No newline at end of file
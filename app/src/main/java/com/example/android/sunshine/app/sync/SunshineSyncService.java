@@ -8,13 +8,17 @@ import android.util.Log;
 public class SunshineSyncService extends Service {
     private static final Object sSyncAdapterLock = new Object();
     private static SunshineSyncAdapter sSunshineSyncAdapter = null;
+    // Lives as long as the adapter, so its connection to the wearable outlasts a single sync.
+    private static WearablePublisher sWearablePublisher = null;
 
     @Override
     public void onCreate() {
         Log.d("SunshineSyncService", "onCreate - SunshineSyncService");
         synchronized (sSyncAdapterLock) {
             if (sSunshineSyncAdapter == null) {
-                sSunshineSyncAdapter = new SunshineSyncAdapter(getApplicationContext(), true);
+                sWearablePublisher = new WearablePublisher(getApplicationContext());
+                sSunshineSyncAdapter = new SunshineSyncAdapter(getApplicationContext(), true,
+                        sWearablePublisher);
             }
         }
     }
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.WearForecast;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the packed forecast (see {@link WearForecast}) to the watch face.  There is one for the
+ * sync service, shared by every sync.
+ *
+ * {@link #publish} only queues the forecast and returns.  On its own thread, the publisher
+ * waits a moment so syncs that finish close together are sent once, connects to the Data
+ * Layer, sends the latest forecast, and disconnects once it has been idle for a while.  A
+ * forecast identical to the last one sent isn't sent again, and a failing send is retried a
+ * few times and then dropped until the next sync.
+ */
+public class WearablePublisher {
+    private static final String LOG_TAG = WearablePublisher.class.getSimpleName();
+
+    // Wait this long for another forecast before sending.
+    private static final long PUBLISH_DELAY_MS = TimeUnit.SECONDS.toMillis(2);
+    // Stay connected this long after sending, in case another forecast follows.
+    private static final long IDLE_DISCONNECT_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final long CONNECT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long PUT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Where forecasts go.  Only called on the publisher's thread, so it may block.
+     */
+    interface Transport {
+        boolean isConnected();
+
+        boolean connect();
+
+        boolean putForecast(byte[] forecast);
+
+        void disconnect();
+    }
+
+    private final Transport mTransport;
+    private final long mPublishDelayMs;
+    private final long mIdleDisconnectMs;
+    private final long mRetryDelayMs;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // Guarded by this.
+    private byte[] mPending;
+    private byte[] mPublished;
+    private boolean mFlushScheduled;
+    private int mAttempts;
+    private int mPublishCount;
+    private int mSkipCount;
+
+    // Only touched on the publisher's thread.
+    private ScheduledFuture<?> mRelease;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mReleaseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mTransport.isConnected()) {
+                Log.d(LOG_TAG, "Idle, disconnecting from the wearable");
+                mTransport.disconnect();
+            }
+        }
+    };
+
+    public WearablePublisher(Context context) {
+        this(new DataApiTransport(context.getApplicationContext()), PUBLISH_DELAY_MS,
+                IDLE_DISCONNECT_MS, RETRY_DELAY_MS);
+    }
+
+    WearablePublisher(Transport transport, long publishDelayMs, long idleDisconnectMs,
+                      long retryDelayMs) {
+        mTransport = transport;
+        mPublishDelayMs = publishDelayMs;
+        mIdleDisconnectMs = idleDisconnectMs;
+        mRetryDelayMs = retryDelayMs;
+    }
+
+    /**
+     * Queues a forecast to be sent, replacing any that hasn't been sent yet.  Returns right away.
+     */
+    public void publish(byte[] forecast) {
+        synchronized (this) {
+            if (mPending == null && Arrays.equals(forecast, mPublished)) {
+                mSkipCount++;
+                return;
+            }
+            mPending = forecast;
+            mAttempts = 0;
+            if (mFlushScheduled) {
+                return;
+            }
+            mFlushScheduled = true;
+        }
+        mExecutor.schedule(mFlushRunnable, mPublishDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return how many forecasts were sent to the wearable
+     */
+    public synchronized int getPublishCount() {
+        return mPublishCount;
+    }
+
+    /**
+     * @return how many forecasts weren't sent because the wearable already had them
+     */
+    public synchronized int getSkipCount() {
+        return mSkipCount;
+    }
+
+    /**
+     * Stops the publisher's thread, dropping anything not sent yet.
+     */
+    void shutdown() {
+        mExecutor.shutdownNow();
+        mTransport.disconnect();
+    }
+
+    private void flush() {
+        byte[] forecast;
+        synchronized (this) {
+            mFlushScheduled = false;
+            forecast = mPending;
+            if (forecast == null) {
+                return;
+            }
+            if (Arrays.equals(forecast, mPublished)) {
+                mPending = null;
+                mSkipCount++;
+                return;
+            }
+        }
+
+        if (mRelease != null) {
+            mRelease.cancel(false);
+            mRelease = null;
+        }
+        boolean sent = (mTransport.isConnected() || mTransport.connect())
+                && mTransport.putForecast(forecast);
+
+        synchronized (this) {
+            if (sent) {
+                Log.d(LOG_TAG, "Forecast sent to the wearable");
+                mPublished = forecast;
+                mPublishCount++;
+                if (mPending == forecast) {
+                    mPending = null;
+                }
+            } else if (mPending == forecast && !mFlushScheduled) {
+                // Nothing newer came in meanwhile, which would have scheduled its own flush.
+                if (++mAttempts < MAX_ATTEMPTS) {
+                    mFlushScheduled = true;
+                    mExecutor.schedule(mFlushRunnable, mRetryDelayMs, TimeUnit.MILLISECONDS);
+                } else {
+                    Log.w(LOG_TAG, "Giving up on sending the forecast to the wearable");
+                    mPending = null;
+                    mAttempts = 0;
+                }
+            }
+        }
+
+        if (sent) {
+            mRelease = mExecutor.schedule(mReleaseRunnable, mIdleDisconnectMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            // Don't sit on a half working connection until the next attempt.
+            mTransport.disconnect();
+        }
+    }
+
+    /**
+     * Puts the forecast in the Data Layer with a client that's built the first time it's needed.
+     */
+    private static class DataApiTransport implements Transport {
+        private final Context mContext;
+        private GoogleApiClient mClient;
+
+        DataApiTransport(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mClient != null && mClient.isConnected();
+        }
+
+        @Override
+        public boolean connect() {
+            if (mClient == null) {
+                mClient = new GoogleApiClient.Builder(mContext)
+                        .addApi(Wearable.API)
+                        .build();
+            }
+            ConnectionResult result =
+                    mClient.blockingConnect(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!result.isSuccess()) {
+                Log.d(LOG_TAG, "GoogleApi connection failed: " + result);
+            }
+            return result.isSuccess();
+        }
+
+        @Override
+        public boolean putForecast(byte[] forecast) {
+            // No timestamp: an unchanged forecast makes an identical data item, which the watch
+            // isn't told about again.
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WearForecast.PATH);
+            putDataMapRequest.getDataMap().putByteArray(WearForecast.KEY_FORECAST, forecast);
+            PutDataRequest request = putDataMapRequest.asPutDataRequest();
+            request.setUrgent();
+
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mClient, request)
+                    .await(PUT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!result.getStatus().isSuccess()) {
+                Log.d(LOG_TAG, "Error sending to wearable: " + result.getStatus());
+            }
+            return result.getStatus().isSuccess();
+        }
+
+        @Override
+        public void disconnect() {
+            if (mClient != null) {
+                mClient.disconnect();
+            }
+        }
+    }
+}
@@ -7,18 +7,17 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
+import java.util.HashSet;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -46,14 +45,28 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private String mLocationSetting;
+            private WidgetArtCache mArtCache;
+            // Time spent in getViewAt since the last onDataSetChanged, logged by the next one
+            // rather than on every bind.
+            private long mBindNanos;
+            private int mBindCount;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                mArtCache = new WidgetArtCache(DetailWidgetRemoteViewsService.this,
+                        getResources().getDimensionPixelSize(R.dimen.list_icon));
             }
 
             @Override
             public void onDataSetChanged() {
+                if (mBindCount > 0) {
+                    Log.d(LOG_TAG, mBindCount + " getViewAt calls took "
+                            + mBindNanos / mBindCount / 1000 + "us each");
+                    mBindNanos = 0;
+                    mBindCount = 0;
+                }
+                long start = SystemClock.elapsedRealtime();
                 if (data != null) {
                     data.close();
                 }
@@ -62,15 +75,32 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                mLocationSetting =
+                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+                        .buildWeatherLocationWithStartDate(mLocationSetting,
+                                System.currentTimeMillis());
                 data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+
+                // Load all the art now, so getViewAt only has to look it up.  The launcher
+                // shows the old rows until this returns.
+                int prefetched = 0;
+                if (data != null
+                        && !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    HashSet<Integer> weatherIds = new HashSet<>();
+                    for (int i = 0; data.moveToPosition(i); i++) {
+                        weatherIds.add(data.getInt(INDEX_WEATHER_CONDITION_ID));
+                    }
+                    prefetched = mArtCache.prefetch(weatherIds);
+                }
+                Log.d(LOG_TAG, "onDataSetChanged took "
+                        + (SystemClock.elapsedRealtime() - start) + "ms, prefetched "
+                        + prefetched + " images");
             }
 
             @Override
@@ -92,23 +122,15 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         data == null || !data.moveToPosition(position)) {
                     return null;
                 }
+                long start = System.nanoTime();
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+                // Prefetched in onDataSetChanged; art that failed to load gets the local icon.
                 Bitmap weatherArtImage = null;
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
+                    weatherArtImage = mArtCache.get(weatherId);
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
@@ -134,13 +156,13 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
+                        mLocationSetting,
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                mBindNanos += System.nanoTime() - start;
+                mBindCount++;
                 return views;
             }
 
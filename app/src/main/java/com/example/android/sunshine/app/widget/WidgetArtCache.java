@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.Utility;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Remote weather art for the detail widget, already scaled down to the size of the widget's
+ * icon.  Every bitmap set on a row is copied through the launcher's binder transaction, so the
+ * smaller the better.
+ *
+ * {@link #prefetch} loads the art for a set of conditions all at once; {@link #get} never loads
+ * anything.
+ */
+class WidgetArtCache {
+    private static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    // Plenty for one of every condition at the largest densities.
+    private static final int MAX_BYTES = 1024 * 1024;
+
+    private final Context mContext;
+    private final int mSize;
+
+    // Keyed by URL, so a change of art pack doesn't show the old pack's art.
+    private final LruCache<String, Bitmap> mBitmaps = new LruCache<String, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String url, Bitmap bitmap) {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    };
+
+    /**
+     * @param size width and height of the icon, in pixels
+     */
+    WidgetArtCache(Context context, int size) {
+        mContext = context.getApplicationContext();
+        mSize = size;
+    }
+
+    /**
+     * Loads the art for every condition that isn't cached yet, in parallel, and waits for all
+     * of it.  Art that fails to load is left out; {@link #get} returns null for it.
+     *
+     * @return how many images were loaded
+     */
+    int prefetch(Collection<Integer> weatherIds) {
+        List<String> urls = new ArrayList<>(weatherIds.size());
+        List<FutureTarget<Bitmap>> targets = new ArrayList<>(weatherIds.size());
+        // Start every load before waiting on any; Glide runs them on its own threads.
+        for (int weatherId : weatherIds) {
+            String url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            if (url == null || mBitmaps.get(url) != null || urls.contains(url)) {
+                continue;
+            }
+            urls.add(url);
+            targets.add(Glide.with(mContext)
+                    .load(url)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(mSize, mSize));
+        }
+
+        int loaded = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                mBitmaps.put(urls.get(i), targets.get(i).get());
+                loaded++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving art from " + urls.get(i), e);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the cached art for the condition, or null if it hasn't been prefetched
+     */
+    Bitmap get(int weatherId) {
+        String url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        return url == null ? null : mBitmaps.get(url);
+    }
+}
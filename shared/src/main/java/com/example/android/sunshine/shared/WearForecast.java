@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The forecast the phone sends the watch face: every day of the forecast window, packed into
+ * ten bytes a day.  Temperatures travel in Celsius along with the user's choice of units, and
+ * the watch formats them itself.
+ *
+ * The bytes only depend on the forecast, so sending an unchanged forecast again produces an
+ * identical data item, which the Data Layer doesn't report as a change.
+ *
+ * Layout, big-endian: version (byte), flags (byte), day count (short), then for each day its
+ * epoch day (int), weather id (short), and high and low in tenths of a degree (short each).
+ */
+public final class WearForecast {
+
+    /**
+     * The data item path, and the key of the packed forecast in its data map.
+     */
+    public static final String PATH = "/sunshine-forecast";
+    public static final String KEY_FORECAST = "forecast";
+
+    /**
+     * Bumped whenever the layout changes.  Readers reject versions they don't know.
+     */
+    public static final int VERSION = 1;
+
+    private static final int FLAG_METRIC = 1;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int DAY_SIZE = 10;
+
+    private final boolean mMetric;
+    private final int[] mEpochDays;
+    private final short[] mWeatherIds;
+    private final short[] mHighs;
+    private final short[] mLows;
+
+    private WearForecast(boolean metric, int[] epochDays, short[] weatherIds, short[] highs,
+                         short[] lows) {
+        mMetric = metric;
+        mEpochDays = epochDays;
+        mWeatherIds = weatherIds;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * Collects the days of a forecast, in date order.
+     */
+    public static final class Builder {
+        private final boolean mMetric;
+        private int[] mEpochDays;
+        private short[] mWeatherIds;
+        private short[] mHighs;
+        private short[] mLows;
+        private int mSize;
+
+        /**
+         * @param metric whether the watch should show the temperatures in Celsius
+         * @param capacity how many days there will be
+         */
+        public Builder(boolean metric, int capacity) {
+            mMetric = metric;
+            mEpochDays = new int[capacity];
+            mWeatherIds = new short[capacity];
+            mHighs = new short[capacity];
+            mLows = new short[capacity];
+        }
+
+        /**
+         * @param epochDay the local day, counted in days since January 1st, 1970
+         * @param high the high in Celsius
+         * @param low the low in Celsius
+         */
+        public Builder addDay(long epochDay, int weatherId, double high, double low) {
+            if (mSize == mEpochDays.length) {
+                throw new IllegalStateException("More days than the builder's capacity");
+            }
+            mEpochDays[mSize] = (int) epochDay;
+            mWeatherIds[mSize] = (short) weatherId;
+            mHighs[mSize] = toTenths(high);
+            mLows[mSize] = toTenths(low);
+            mSize++;
+            return this;
+        }
+
+        public WearForecast build() {
+            return new WearForecast(mMetric, copyOf(mEpochDays, mSize),
+                    copyOf(mWeatherIds, mSize), copyOf(mHighs, mSize), copyOf(mLows, mSize));
+        }
+    }
+
+    private static short toTenths(double degrees) {
+        return (short) Math.round(degrees * 10);
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static short[] copyOf(short[] array, int length) {
+        short[] copy = new short[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + DAY_SIZE * size());
+        buffer.put((byte) VERSION);
+        buffer.put((byte) (mMetric ? FLAG_METRIC : 0));
+        buffer.putShort((short) size());
+        for (int i = 0; i < size(); i++) {
+            buffer.putInt(mEpochDays[i]);
+            buffer.putShort(mWeatherIds[i]);
+            buffer.putShort(mHighs[i]);
+            buffer.putShort(mLows[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are from a version we don't know, or cut
+     * short
+     */
+    public static WearForecast fromByteArray(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            int version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown forecast version " + version);
+            }
+            boolean metric = (buffer.get() & FLAG_METRIC) != 0;
+            int size = buffer.getShort() & 0xffff;
+            int[] epochDays = new int[size];
+            short[] weatherIds = new short[size];
+            short[] highs = new short[size];
+            short[] lows = new short[size];
+            for (int i = 0; i < size; i++) {
+                epochDays[i] = buffer.getInt();
+                weatherIds[i] = buffer.getShort();
+                highs[i] = buffer.getShort();
+                lows[i] = buffer.getShort();
+            }
+            return new WearForecast(metric, epochDays, weatherIds, highs, lows);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Forecast is cut short", e);
+        }
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    public int size() {
+        return mEpochDays.length;
+    }
+
+    public long getEpochDay(int index) {
+        return mEpochDays[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    /**
+     * @return the high in Celsius
+     */
+    public double getHigh(int index) {
+        return mHighs[index] / 10.0;
+    }
+
+    /**
+     * @return the low in Celsius
+     */
+    public double getLow(int index) {
+        return mLows[index] / 10.0;
+    }
+
+    /**
+     * @return the index of the day, or -1 if it's outside the forecast
+     */
+    public int indexOfDay(long epochDay) {
+        for (int i = 0; i < mEpochDays.length; i++) {
+            if (mEpochDays[i] == epochDay) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+/**
+ * Groups OpenWeatherMap condition codes into the handful of kinds of weather Sunshine has
+ * pictures for.  The phone app and the watch face both look conditions up here, and each keeps
+ * its own array of resources indexed by kind.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int KIND_UNKNOWN = -1;
+    public static final int KIND_STORM = 0;
+    public static final int KIND_LIGHT_RAIN = 1;
+    public static final int KIND_RAIN = 2;
+    public static final int KIND_SNOW = 3;
+    public static final int KIND_FOG = 4;
+    // Squalls and tornadoes: drawn as a storm, but they have their own photo.
+    public static final int KIND_SQUALL = 5;
+    public static final int KIND_CLEAR = 6;
+    public static final int KIND_LIGHT_CLOUDS = 7;
+    public static final int KIND_CLOUDS = 8;
+
+    /**
+     * The number of kinds, and so the length of any array indexed by kind.
+     */
+    public static final int KIND_COUNT = 9;
+
+    /**
+     * Condition codes run from 200 to 962; anything at or above this is unknown.
+     */
+    public static final int MAX_WEATHER_ID = 1000;
+
+    // What goes in the %s of an art pack URL, by kind.
+    private static final String[] ART_NAMES = new String[KIND_COUNT];
+
+    private static final String[] IMAGE_URLS = new String[KIND_COUNT];
+
+    // One slot per condition code, so a lookup is a single array read.
+    private static final byte[] KINDS = new byte[MAX_WEATHER_ID];
+
+    static {
+        ART_NAMES[KIND_STORM] = "storm";
+        ART_NAMES[KIND_LIGHT_RAIN] = "light_rain";
+        ART_NAMES[KIND_RAIN] = "rain";
+        ART_NAMES[KIND_SNOW] = "snow";
+        ART_NAMES[KIND_FOG] = "fog";
+        ART_NAMES[KIND_SQUALL] = "storm";
+        ART_NAMES[KIND_CLEAR] = "clear";
+        ART_NAMES[KIND_LIGHT_CLOUDS] = "light_clouds";
+        ART_NAMES[KIND_CLOUDS] = "clouds";
+
+        IMAGE_URLS[KIND_STORM] = "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        IMAGE_URLS[KIND_LIGHT_RAIN] = "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        IMAGE_URLS[KIND_RAIN] = "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        IMAGE_URLS[KIND_SNOW] = "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        IMAGE_URLS[KIND_FOG] = "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        IMAGE_URLS[KIND_SQUALL] = "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        IMAGE_URLS[KIND_CLEAR] = "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        IMAGE_URLS[KIND_LIGHT_CLOUDS] = "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        IMAGE_URLS[KIND_CLOUDS] = "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+
+        fill(0, MAX_WEATHER_ID - 1, KIND_UNKNOWN);
+        fill(200, 232, KIND_STORM);
+        fill(300, 321, KIND_LIGHT_RAIN);
+        fill(500, 504, KIND_RAIN);
+        fill(511, 511, KIND_SNOW);
+        fill(520, 531, KIND_RAIN);
+        fill(600, 622, KIND_SNOW);
+        fill(701, 761, KIND_FOG);
+        fill(781, 781, KIND_SQUALL);
+        fill(800, 800, KIND_CLEAR);
+        fill(801, 801, KIND_LIGHT_CLOUDS);
+        fill(802, 804, KIND_CLOUDS);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void fill(int firstWeatherId, int lastWeatherId, int kind) {
+        for (int weatherId = firstWeatherId; weatherId <= lastWeatherId; weatherId++) {
+            KINDS[weatherId] = (byte) kind;
+        }
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the kind of weather the condition is, or KIND_UNKNOWN if we have no picture for it
+     */
+    public static int getKind(int weatherId) {
+        if (weatherId < 0 || weatherId >= MAX_WEATHER_ID) {
+            return KIND_UNKNOWN;
+        }
+        return KINDS[weatherId];
+    }
+
+    /**
+     * @return the name art packs use for a kind of weather, e.g. "light_rain", or null for
+     * KIND_UNKNOWN
+     */
+    public static String getArtName(int kind) {
+        return kind == KIND_UNKNOWN ? null : ART_NAMES[kind];
+    }
+
+    /**
+     * @return a photo of a kind of weather, or null for KIND_UNKNOWN
+     */
+    public static String getImageUrl(int kind) {
+        return kind == KIND_UNKNOWN ? null : IMAGE_URLS[kind];
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int FRAMES = 600;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Resources resources = getContext().getResources();
+        mRenderer = new WatchFaceRenderer(resources);
+        mRenderer.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+        mRenderer.applyWindowInsets(resources, true);
+        mRenderer.setTemperatures("25°", "16°");
+        mRenderer.setIcon(new WeatherIconCache(resources).get(800, mRenderer.getIconSize()));
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    // 8am on a weekday, so ten minutes of frames stay within the same day.
+    private static long morning() {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+        calendar.set(2016, Calendar.MARCH, 15, 8, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    public void testFormatTime() {
+        char[] buffer = new char[8];
+        assertEquals("0:05:09", new String(buffer, 0,
+                WatchFaceRenderer.formatTime(buffer, 0, 5, 9, true)));
+        assertEquals("11:59", new String(buffer, 0,
+                WatchFaceRenderer.formatTime(buffer, 11, 59, 30, false)));
+    }
+
+    public void testTextIsOnlyRebuiltWhenItChanges() {
+        long start = morning();
+        WatchFaceRenderer.DrawStats stats = mRenderer.getStats();
+
+        // Several frames within a second only build the text once.
+        for (int i = 0; i < 10; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * 50);
+        }
+        assertEquals(10, stats.frames);
+        assertEquals(1, stats.timeTextBuilds);
+        assertEquals(1, stats.dateTextBuilds);
+
+        // In ambient mode the seconds aren't shown, so the text only changes every minute.
+        mRenderer.setAmbient(true, false);
+        stats.reset();
+        for (int i = 0; i < 120; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * 1000);
+        }
+        assertEquals(2, stats.timeTextBuilds);
+        assertEquals(0, stats.dateTextBuilds);
+
+        // Back in interactive mode, crossing midnight rebuilds the date.
+        mRenderer.setAmbient(false, false);
+        stats.reset();
+        mRenderer.draw(mCanvas, mBounds, start + 16 * 60 * 60 * 1000 - 1);
+        mRenderer.draw(mCanvas, mBounds, start + 16 * 60 * 60 * 1000);
+        assertEquals(2, stats.timeTextBuilds);
+        assertEquals(1, stats.dateTextBuilds);
+    }
+
+    public void testStaticLayerIsOnlyRebuiltWhenItChanges() {
+        long start = morning();
+        WatchFaceRenderer.DrawStats stats = mRenderer.getStats();
+
+        for (int i = 0; i < 60; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * 1000);
+        }
+        assertEquals(1, stats.staticLayerBuilds);
+
+        // The same weather again doesn't change anything.
+        mRenderer.setTemperatures("25°", "16°");
+        mRenderer.draw(mCanvas, mBounds, start + 60 * 1000);
+        assertEquals(1, stats.staticLayerBuilds);
+
+        mRenderer.setTemperatures("26°", "16°");
+        mRenderer.draw(mCanvas, mBounds, start + 61 * 1000);
+        assertEquals(2, stats.staticLayerBuilds);
+
+        // Ambient mode doesn't use the layer, and it's redrawn when we're interactive again.
+        mRenderer.setAmbient(true, false);
+        mRenderer.draw(mCanvas, mBounds, start + 62 * 1000);
+        assertEquals(2, stats.staticLayerBuilds);
+        mRenderer.setAmbient(false, false);
+        mRenderer.draw(mCanvas, mBounds, start + 63 * 1000);
+        assertEquals(3, stats.staticLayerBuilds);
+
+        // So is the date at midnight.
+        mRenderer.draw(mCanvas, mBounds, start + 16 * 60 * 60 * 1000);
+        assertEquals(4, stats.staticLayerBuilds);
+    }
+
+    public void testSteadyStateDrawsDoNotAllocate() {
+        long start = morning();
+        // The first frame builds the date and the static layer.
+        mRenderer.draw(mCanvas, mBounds, start);
+
+        WatchFaceRenderer.DrawStats stats = mRenderer.getStats();
+        stats.reset();
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 1; i <= FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * 1000);
+        }
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, stats.frames + " frames: " + stats.totalFrameNanos / stats.frames / 1000
+                + "us average, " + stats.maxFrameNanos / 1000 + "us max, "
+                + stats.allocations + " allocations");
+
+        assertEquals(FRAMES, stats.frames);
+        assertEquals(FRAMES, stats.timeTextBuilds);
+        assertEquals(0, stats.dateTextBuilds);
+        assertEquals(0, stats.staticLayerBuilds);
+        assertEquals(0, stats.allocations);
+    }
+}
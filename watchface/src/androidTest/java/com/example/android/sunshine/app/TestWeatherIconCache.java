@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+public class TestWeatherIconCache extends AndroidTestCase {
+
+    private static final int SIZE = 48;
+
+    public void testIconsAreDecodedAtTheirSize() {
+        WeatherIconCache cache = new WeatherIconCache(getContext().getResources());
+        WeatherIconCache.Icon icon = cache.get(800, SIZE);
+        assertSize(icon.interactive);
+        assertSize(icon.ambient);
+        assertSize(icon.lowBitAmbient);
+    }
+
+    public void testIconsAreCachedByArtAndSize() {
+        WeatherIconCache cache = new WeatherIconCache(getContext().getResources());
+        WeatherIconCache.Icon rain = cache.get(501, SIZE);
+        assertEquals(1, cache.getDecodeCount());
+
+        // Moderate and heavy rain use the same art.
+        assertSame(rain, cache.get(502, SIZE));
+        assertEquals(1, cache.getDecodeCount());
+
+        assertNotSame(rain, cache.get(800, SIZE));
+        assertNotSame(rain, cache.get(501, SIZE * 2));
+        assertEquals(3, cache.getDecodeCount());
+
+        // Unknown weather falls back to the clear art.
+        assertSame(cache.get(800, SIZE), cache.get(-1, SIZE));
+        assertEquals(3, cache.getDecodeCount());
+    }
+
+    public void testAmbientVariants() {
+        WeatherIconCache cache = new WeatherIconCache(getContext().getResources());
+        WeatherIconCache.Icon icon = cache.get(800, SIZE);
+
+        boolean anyWhite = false;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int gray = icon.ambient.getPixel(x, y);
+                if (Color.alpha(gray) == 0xff) {
+                    assertEquals(Color.red(gray), Color.green(gray), 1);
+                    assertEquals(Color.green(gray), Color.blue(gray), 1);
+                }
+
+                int lowBit = icon.lowBitAmbient.getPixel(x, y);
+                assertTrue(lowBit == Color.WHITE || lowBit == Color.TRANSPARENT);
+                anyWhite |= lowBit == Color.WHITE;
+            }
+        }
+        assertTrue("The low-bit icon is empty", anyWhite);
+    }
+
+    private static void assertSize(Bitmap bitmap) {
+        assertEquals(SIZE, bitmap.getWidth());
+        assertEquals(SIZE, bitmap.getHeight());
+    }
+}
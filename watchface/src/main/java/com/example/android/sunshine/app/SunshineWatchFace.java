@@ -21,17 +21,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.RectF;
-import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -39,23 +31,26 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.util.Base64;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.shared.WearForecast;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -64,9 +59,6 @@ import java.util.concurrent.TimeUnit;
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -78,6 +70,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
 
     @Override
     public Engine onCreateEngine() {
@@ -110,47 +104,24 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-        Paint mTimeTextPaint;
-        Paint mDateTextPaint;
-        Paint mTempsTextPaintHigh;
-        Paint mTempsTextPaintLow;
-        Paint mLinePaint;
-        Paint mIconPaint;
+        WatchFaceRenderer mRenderer;
+        WeatherIconCache mIconCache;
 
         boolean mAmbient;
-        Calendar mCalendar;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                showToday();
                 invalidate();
             }
         };
-        float mTimeXOffset;
-        float mTimeYOffset;
-
-        float mDateXOffset;
-        float mDateYOffset;
-
-        float mTempsXOffset;
-        float mTempsYOffset;
-
-        float mLineXOffset;
-        float mLineYOffset;
-
-        float mIconWidth;
-
-        float mIconPadding;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
          */
         boolean mLowBitAmbient;
-        private Bitmap mIconBitmap;
-
-        private SimpleDateFormat mDateFormat;
 
         // Following the logic of example DigitalWatchFaceService
         GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
@@ -159,15 +130,15 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 .addApi(Wearable.API)
                 .build();
 
-        private String mLowTempText;
-        private String mHighTempText;
+        // Every day the phone sent us, or null if we haven't heard from it yet.
+        private WearForecast mForecast;
         private int mWeatherId;
+        // When the day being shown is over, and the next one in the forecast should be shown.
+        private long mNextDayStart = Long.MAX_VALUE;
 
         // Shared Preferences and Keys
         private SharedPreferences mPrefs;
-        private final String EXTRA_LOW_TEMP = "lowtemp";
-        private final String EXTRA_HIGH_TEMP = "hightemp";
-        private final String EXTRA_WEATHER_ID = "weatherid";
+        private final String EXTRA_FORECAST = "forecast";
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -180,59 +151,21 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setAcceptsTapEvents(true)
                     .build());
 
-            // Get Dimensions
-            Resources resources = SunshineWatchFace.this.getResources();
-            mTimeYOffset = resources.getDimension(R.dimen.time_y_offset);
-            mDateYOffset = resources.getDimension(R.dimen.date_y_offset);
-            mTempsYOffset = resources.getDimension(R.dimen.temps_y_offset);
-            mLineYOffset = resources.getDimension(R.dimen.line_y_offset);
-            mIconPadding = resources.getDimension(R.dimen.icon_padding);
-
-            // Set up paint objects
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.background));
-
-            mTimeTextPaint = new Paint();
-            mTimeTextPaint = createTextPaint(resources.getColor(R.color.lighter_text));
-            mTimeTextPaint.setTextAlign(Paint.Align.CENTER);
-
-            mDateTextPaint = new Paint();
-            mDateTextPaint = createTextPaint(resources.getColor(R.color.darker_text));
-            mDateTextPaint.setTextAlign(Paint.Align.CENTER);
-
-            mTempsTextPaintHigh = new Paint();
-            mTempsTextPaintHigh = createTextPaint(resources.getColor(R.color.lighter_text));
-            mTempsTextPaintHigh.setTextAlign(Paint.Align.CENTER);
-
-            mTempsTextPaintLow = new Paint();
-            mTempsTextPaintLow = createTextPaint(resources.getColor(R.color.darker_text));
-
-            mLinePaint = new Paint();
-            mLinePaint.setColor(resources.getColor(R.color.lighter_text));
-
-            mIconPaint = new Paint();
-
-            // Load the default clear icon
-            Drawable backgroundDrawable = resources.getDrawable(R.drawable.art_clear, null);
-            mIconBitmap = ((BitmapDrawable) backgroundDrawable).getBitmap();
-
-            // Get the Calendar object and DateFormat
-            mCalendar = Calendar.getInstance();
-            mDateFormat = new SimpleDateFormat("EEE, d MMM, yyyy", Locale.US);
+            // Set up the paints, dimensions and text buffers
+            mRenderer = new WatchFaceRenderer(SunshineWatchFace.this.getResources());
+            mIconCache = new WeatherIconCache(SunshineWatchFace.this.getResources());
 
             // Get Default Values from Shared Preferences
             mPrefs = getApplicationContext().getSharedPreferences(
                     getString(R.string.shared_preferences_key), Context.MODE_PRIVATE);
 
-            mLowTempText = mPrefs.getString(EXTRA_LOW_TEMP, getResources().getString(R.string.temp_default_string));
-            mHighTempText = mPrefs.getString(EXTRA_HIGH_TEMP, getResources().getString(R.string.temp_default_string));
-            int defaultValue = Integer.parseInt(getResources().getString(R.string.weather_id_default));
-            mWeatherId = mPrefs.getInt(EXTRA_WEATHER_ID, defaultValue);
-
-            // load the appropriate drawable given the weatherId and set as the mIconBitmap
-            int iconId = Utility.getArtResourceForWeatherCondition(mWeatherId);
-            mIconBitmap = BitmapFactory.decodeResource(getApplicationContext().getResources(),iconId);
+            String forecast = mPrefs.getString(EXTRA_FORECAST, null);
+            if (forecast != null) {
+                mForecast = readForecast(Base64.decode(forecast, Base64.DEFAULT));
+            }
 
+            // The icon is loaded once the insets tell us how big to make it
+            showToday();
         }
 
 
@@ -242,12 +175,47 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
+        private WearForecast readForecast(byte[] bytes) {
+            try {
+                return WearForecast.fromByteArray(bytes);
+            } catch (IllegalArgumentException e) {
+                Log.w("WatchFace", "Ignoring forecast", e);
+                return null;
+            }
+        }
+
+        /**
+         * Shows today's weather from the forecast, or placeholders if it doesn't cover today.
+         */
+        private void showToday() {
+            long now = System.currentTimeMillis();
+            TimeZone timeZone = TimeZone.getDefault();
+            long localDayStart = now + timeZone.getOffset(now);
+            localDayStart -= localDayStart % DAY_IN_MILLIS;
+            long today = localDayStart / DAY_IN_MILLIS;
+            // Good enough across a daylight saving change; we'd just check an hour early or late.
+            mNextDayStart = localDayStart + DAY_IN_MILLIS - timeZone.getOffset(now);
+
+            int index = mForecast == null ? -1 : mForecast.indexOfDay(today);
+            if (index == -1) {
+                String placeholder = getString(R.string.temp_default_string);
+                mWeatherId = Integer.parseInt(getString(R.string.weather_id_default));
+                mRenderer.setTemperatures(placeholder, placeholder);
+            } else {
+                boolean metric = mForecast.isMetric();
+                mWeatherId = mForecast.getWeatherId(index);
+                mRenderer.setTemperatures(
+                        Utility.formatTemperature(mForecast.getHigh(index), metric),
+                        Utility.formatTemperature(mForecast.getLow(index), metric));
+            }
+            updateIcon();
+        }
+
+        private void updateIcon() {
+            int size = mRenderer.getIconSize();
+            if (size > 0) {
+                mRenderer.setIcon(mIconCache.get(mWeatherId, size));
+            }
         }
 
         @Override
@@ -261,7 +229,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 mGoogleApiClient.connect();
 
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                showToday();
                 invalidate();
             } else {
                 unregisterReceiver();
@@ -300,56 +269,15 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-
-            /*
-            Time dimensions
-             */
-            mTimeXOffset = resources.getDimension(isRound
-                    ? R.dimen.time_x_offset_round : R.dimen.time_x_offset);
-            float timeTextSize = resources.getDimension(isRound
-                    ? R.dimen.time_text_size_round : R.dimen.time_text_size);
-            mTimeTextPaint.setTextSize(timeTextSize);
-
-            /*
-            Date dimensions
-             */
-            mDateXOffset = resources.getDimension(isRound
-                    ? R.dimen.date_x_offset_round : R.dimen.date_x_offset);
-            float dateTextSize = resources.getDimension(isRound
-                    ? R.dimen.date_text_size_round : R.dimen.date_text_size);
-            mDateTextPaint.setTextSize(dateTextSize);
-
-            /*
-            Temp dimensions
-             */
-            mTempsXOffset = resources.getDimension(isRound
-                    ? R.dimen.temps_x_offset_round : R.dimen.temps_x_offset);
-            float tempsTextSize = resources.getDimension(isRound
-                    ? R.dimen.temps_text_size_round : R.dimen.temps_text_size);
-            mTempsTextPaintHigh.setTextSize(tempsTextSize);
-            mTempsTextPaintLow.setTextSize(tempsTextSize);
-
-            // get temp bounds in order to properly size the icon bounding box
-            Rect tempBounds = new Rect();
-            mTempsTextPaintHigh.getTextBounds("25", 0, "25".length(), tempBounds);
-
-            float textH = tempBounds.bottom - tempBounds.top;
-
-            mIconWidth = textH + mIconPadding; //The height of the text plus padding
-
-            /*
-            Line Dimensions
-             */
-            mLineXOffset = resources.getDimension(R.dimen.line_x_offset);
-
+            mRenderer.applyWindowInsets(SunshineWatchFace.this.getResources(), insets.isRound());
+            updateIcon();
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setAmbient(mAmbient, mLowBitAmbient);
         }
 
         @Override
@@ -363,9 +291,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTimeTextPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(mAmbient, mLowBitAmbient);
                 invalidate();
             }
 
@@ -396,60 +322,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-
-            // Get dimensions and center - adapted from https://developer.android.com/training/wearables/watch-faces/drawing.html
-            int width = bounds.width();
-            int height = bounds.height();
-
-            float centerX = width / 2f;
-            float centerY = height / 2f;
-
-            float thirdW = width / 3f;
-
-            float lineHalfLength = 30f;
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            String text = mAmbient
-                    ? String.format("%d:%02d", mCalendar.get(Calendar.HOUR),
-                    mCalendar.get(Calendar.MINUTE))
-                    : String.format("%d:%02d:%02d", mCalendar.get(Calendar.HOUR),
-                    mCalendar.get(Calendar.MINUTE), mCalendar.get(Calendar.SECOND));
-            canvas.drawText(text, centerX, mTimeYOffset, mTimeTextPaint);
-
-
-            if(!mAmbient){
-
-                float tempBaseline = height - mTempsYOffset;
-
-                String date = mDateFormat.format(mCalendar.getTime());
-
-                canvas.drawText(date, centerX, mDateYOffset, mDateTextPaint);
-
-                canvas.drawText(mHighTempText, centerX, tempBaseline, mTempsTextPaintHigh);
-                canvas.drawText(mLowTempText, width - thirdW, tempBaseline, mTempsTextPaintLow);
-
-                // Center Line
-                canvas.drawLine(centerX-lineHalfLength, centerY, centerX + lineHalfLength, centerY, mLinePaint);
-
-                // Icon
-                RectF rectF = new RectF(thirdW - mIconWidth,
-                        tempBaseline-(mIconWidth-mIconPadding/2),
-                        thirdW,
-                        tempBaseline+mIconPadding/2);
-
-                canvas.drawBitmap(mIconBitmap, null, rectF, null);
+            // Checked on every frame, ambient or not.  The forecast already has the new day in it.
+            if (now >= mNextDayStart) {
+                showToday();
             }
-
+            mRenderer.draw(canvas, bounds, now);
         }
 
         /**
@@ -486,34 +364,35 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDataChanged(DataEventBuffer dataEventBuffer) {
-
             for (DataEvent dataEvent : dataEventBuffer) {
                 if (dataEvent.getType() == DataEvent.TYPE_CHANGED) {
-                    DataMap dataMap = DataMapItem.fromDataItem(dataEvent.getDataItem()).getDataMap();
-                    String path = dataEvent.getDataItem().getUri().getPath();
-                    if(path.equals("/sunshine-forecast")){
-                        mHighTempText = dataMap.getString("high-temp");
-                        mLowTempText = dataMap.getString("low-temp");
-                        mWeatherId = dataMap.getInt("weatherId");
-
-                        // load the appropriate drawable given the weatherId and set as the mIconBitmap
-                        int iconId = Utility.getArtResourceForWeatherCondition(mWeatherId);
-                        mIconBitmap = BitmapFactory.decodeResource(getApplicationContext().getResources(),iconId);
-
-                        SharedPreferences.Editor editor = mPrefs.edit();
-                        editor.putInt(EXTRA_WEATHER_ID, mWeatherId);
-                        editor.putString(EXTRA_HIGH_TEMP, mHighTempText);
-                        editor.putString(EXTRA_LOW_TEMP, mLowTempText);
-                        editor.apply();
-
-                        invalidate();
-
-                    }
+                    showForecast(dataEvent.getDataItem());
                 }
-
             }
         }
 
+        /**
+         * Shows and saves the forecast in a data item, if it is one.
+         */
+        private void showForecast(DataItem dataItem) {
+            if (!dataItem.getUri().getPath().equals(WearForecast.PATH)) {
+                return;
+            }
+            DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+            byte[] bytes = dataMap.getByteArray(WearForecast.KEY_FORECAST);
+            WearForecast forecast = bytes == null ? null : readForecast(bytes);
+            if (forecast == null) {
+                return;
+            }
+            mForecast = forecast;
+            showToday();
+
+            SharedPreferences.Editor editor = mPrefs.edit();
+            editor.putString(EXTRA_FORECAST, Base64.encodeToString(bytes, Base64.DEFAULT));
+            editor.apply();
+
+            invalidate();
+        }
 
         @Override
         public void onConnected(@Nullable Bundle bundle) {
@@ -521,6 +400,25 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (Log.isLoggable("WatchFace", Log.DEBUG)) {
                 Log.d("WatchFace", "GoogleApiClient onConnected: " + bundle);
             }
+
+            // The listener only hears about changes, so pick up whatever the phone already put
+            // there: after a fresh install there's nothing saved yet.
+            Uri forecastUri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WearForecast.PATH)
+                    .build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, forecastUri, DataApi.FILTER_PREFIX)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(@NonNull DataItemBuffer dataItems) {
+                            if (dataItems.getStatus().isSuccess()) {
+                                for (DataItem dataItem : dataItems) {
+                                    showForecast(dataItem);
+                                }
+                            }
+                            dataItems.release();
+                        }
+                    });
         }
 
         @Override
@@ -1,5 +1,9 @@
 package com.example.android.sunshine.app;
 
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Locale;
+
 /**
  * Created by danielcook on 12/2/16.
  *
@@ -7,6 +11,21 @@ package com.example.android.sunshine.app;
 
 public class Utility {
 
+    // Art for each kind of weather, indexed by WeatherConditions kind.
+    private static final int[] ART_RESOURCES = new int[WeatherConditions.KIND_COUNT];
+
+    static {
+        ART_RESOURCES[WeatherConditions.KIND_STORM] = R.drawable.art_storm;
+        ART_RESOURCES[WeatherConditions.KIND_LIGHT_RAIN] = R.drawable.art_light_rain;
+        ART_RESOURCES[WeatherConditions.KIND_RAIN] = R.drawable.art_rain;
+        ART_RESOURCES[WeatherConditions.KIND_SNOW] = R.drawable.art_snow;
+        ART_RESOURCES[WeatherConditions.KIND_FOG] = R.drawable.art_fog;
+        ART_RESOURCES[WeatherConditions.KIND_SQUALL] = R.drawable.art_storm;
+        ART_RESOURCES[WeatherConditions.KIND_CLEAR] = R.drawable.art_clear;
+        ART_RESOURCES[WeatherConditions.KIND_LIGHT_CLOUDS] = R.drawable.art_light_clouds;
+        ART_RESOURCES[WeatherConditions.KIND_CLOUDS] = R.drawable.art_clouds;
+    }
+
     /**
      * Helper method to provide the art resource id according to the weather condition id returned
      * by the OpenWeatherMap call.
@@ -14,32 +33,19 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        }
-        return -1;
+        int kind = WeatherConditions.getKind(weatherId);
+        return kind == WeatherConditions.KIND_UNKNOWN ? -1 : ART_RESOURCES[kind];
+    }
+
+    /**
+     * Formats a temperature the way the phone does, in the units the phone uses.
+     * @param celsius the temperature as it's sent, in Celsius
+     * @param metric whether to show it in Celsius rather than Fahrenheit
+     */
+    public static String formatTemperature(double celsius, boolean metric) {
+        double temperature = metric ? celsius : celsius * 1.8 + 32;
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return String.format(Locale.getDefault(), "%1.0f\u00B0", temperature);
     }
 
 }
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Debug;
+import android.text.TextUtils;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face for {@link SunshineWatchFace}.  Everything a frame needs is set
+ * up ahead of time, and the time and date text are only rebuilt when what they show changes,
+ * so drawing the face every second doesn't create any garbage.
+ *
+ * Apart from the time, the interactive face only changes when the weather or the day does.
+ * That part is drawn once into an offscreen layer, so each tick only copies the layer and draws
+ * the time over it.
+ *
+ * Only use it from the thread that draws.
+ */
+class WatchFaceRenderer {
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final long SECOND_IN_MILLIS = 1000;
+    private static final long MINUTE_IN_MILLIS = 60 * SECOND_IN_MILLIS;
+    private static final long HOUR_IN_MILLIS = 60 * MINUTE_IN_MILLIS;
+    private static final long DAY_IN_MILLIS = 24 * HOUR_IN_MILLIS;
+
+    private static final float LINE_HALF_LENGTH = 30f;
+
+    /**
+     * What drawing has cost since the stats were last reset.
+     */
+    static class DrawStats {
+        int frames;
+        long totalFrameNanos;
+        long maxFrameNanos;
+        // Objects allocated while drawing.  Only counted while Debug.startAllocCounting() is on.
+        int allocations;
+        // How often the time and date text, and the static layer, had to be rebuilt.
+        int timeTextBuilds;
+        int dateTextBuilds;
+        int staticLayerBuilds;
+
+        void reset() {
+            frames = 0;
+            totalFrameNanos = 0;
+            maxFrameNanos = 0;
+            allocations = 0;
+            timeTextBuilds = 0;
+            dateTextBuilds = 0;
+            staticLayerBuilds = 0;
+        }
+    }
+
+    private final DrawStats mStats = new DrawStats();
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTimeTextPaint;
+    private final Paint mDateTextPaint;
+    private final Paint mTempsTextPaintHigh;
+    private final Paint mTempsTextPaintLow;
+    private final Paint mLinePaint;
+    private final Paint mIconPaint;
+
+    private final float mTimeYOffset;
+    private final float mDateYOffset;
+    private final float mTempsYOffset;
+    private final float mIconPadding;
+    private float mIconWidth;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+
+    // The local time is worked out from the zone's offset, which can only change on a minute
+    // boundary, so we only ask the zone again once we're past the next one.
+    private TimeZone mTimeZone;
+    private long mZoneOffset;
+    private long mZoneOffsetValidUntil = Long.MIN_VALUE;
+
+    // "H:MM:SS" at most, and the second (or minute, in ambient mode) it was built for.
+    private final char[] mTimeText = new char[8];
+    private int mTimeTextLength;
+    private long mTimeTextBuiltFor = Long.MIN_VALUE;
+
+    // Only rebuilt when the day changes.
+    private final Calendar mCalendar;
+    private final SimpleDateFormat mDateFormat;
+    private String mDateText;
+    private long mDateTextBuiltFor = Long.MIN_VALUE;
+
+    private String mHighTempText;
+    private String mLowTempText;
+
+    // Already the size it's drawn at, see getIconSize().
+    private WeatherIconCache.Icon mIcon;
+
+    // The background, date, temperatures, line and icon.  Only kept while we're interactive.
+    private Bitmap mStaticLayer;
+    private Canvas mStaticLayerCanvas;
+    private boolean mStaticLayerValid;
+
+    WatchFaceRenderer(Resources resources) {
+        mTimeYOffset = resources.getDimension(R.dimen.time_y_offset);
+        mDateYOffset = resources.getDimension(R.dimen.date_y_offset);
+        mTempsYOffset = resources.getDimension(R.dimen.temps_y_offset);
+        mIconPadding = resources.getDimension(R.dimen.icon_padding);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.background));
+
+        mTimeTextPaint = createTextPaint(resources.getColor(R.color.lighter_text));
+        mTimeTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        mDateTextPaint = createTextPaint(resources.getColor(R.color.darker_text));
+        mDateTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        mTempsTextPaintHigh = createTextPaint(resources.getColor(R.color.lighter_text));
+        mTempsTextPaintHigh.setTextAlign(Paint.Align.CENTER);
+
+        mTempsTextPaintLow = createTextPaint(resources.getColor(R.color.darker_text));
+
+        mLinePaint = new Paint();
+        mLinePaint.setColor(resources.getColor(R.color.lighter_text));
+
+        mIconPaint = new Paint();
+
+        mTimeZone = TimeZone.getDefault();
+        mCalendar = Calendar.getInstance(mTimeZone, Locale.US);
+        mDateFormat = new SimpleDateFormat("EEE, d MMM, yyyy", Locale.US);
+        mDateFormat.setTimeZone(mTimeZone);
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    DrawStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Sizes the text and icon for a round or square screen.
+     */
+    void applyWindowInsets(Resources resources, boolean isRound) {
+        mTimeTextPaint.setTextSize(resources.getDimension(isRound
+                ? R.dimen.time_text_size_round : R.dimen.time_text_size));
+        mDateTextPaint.setTextSize(resources.getDimension(isRound
+                ? R.dimen.date_text_size_round : R.dimen.date_text_size));
+
+        float tempsTextSize = resources.getDimension(isRound
+                ? R.dimen.temps_text_size_round : R.dimen.temps_text_size);
+        mTempsTextPaintHigh.setTextSize(tempsTextSize);
+        mTempsTextPaintLow.setTextSize(tempsTextSize);
+
+        // get temp bounds in order to properly size the icon bounding box
+        Rect tempBounds = new Rect();
+        mTempsTextPaintHigh.getTextBounds("25", 0, "25".length(), tempBounds);
+        float textH = tempBounds.bottom - tempBounds.top;
+
+        mIconWidth = textH + mIconPadding; //The height of the text plus padding
+        mStaticLayerValid = false;
+    }
+
+    /**
+     * @return how many pixels wide and high the icon is drawn, or 0 before the insets are known
+     */
+    int getIconSize() {
+        return Math.round(mIconWidth);
+    }
+
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        if (ambient != mAmbient) {
+            mAmbient = ambient;
+            // The ambient face doesn't use the layer, so don't hold on to it while it's showing,
+            // and redraw it when we're back.
+            mStaticLayer = null;
+            mStaticLayerCanvas = null;
+            mStaticLayerValid = false;
+        }
+        mLowBitAmbient = lowBitAmbient;
+        if (mLowBitAmbient) {
+            mTimeTextPaint.setAntiAlias(!ambient);
+        }
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mCalendar.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        mZoneOffsetValidUntil = Long.MIN_VALUE;
+        mTimeTextBuiltFor = Long.MIN_VALUE;
+        mDateTextBuiltFor = Long.MIN_VALUE;
+        mStaticLayerValid = false;
+    }
+
+    void setTemperatures(String highTempText, String lowTempText) {
+        if (!TextUtils.equals(highTempText, mHighTempText)
+                || !TextUtils.equals(lowTempText, mLowTempText)) {
+            mHighTempText = highTempText;
+            mLowTempText = lowTempText;
+            mStaticLayerValid = false;
+        }
+    }
+
+    void setIcon(WeatherIconCache.Icon icon) {
+        if (icon != mIcon) {
+            mIcon = icon;
+            mStaticLayerValid = false;
+        }
+    }
+
+    void draw(Canvas canvas, Rect bounds, long now) {
+        int allocationsBefore = Debug.getThreadAllocCount();
+        long start = System.nanoTime();
+
+        int width = bounds.width();
+        int height = bounds.height();
+        long localTime = now + zoneOffset(now);
+
+        // Draw the background.
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+            if (mIcon != null) {
+                drawIcon(canvas, mLowBitAmbient ? mIcon.lowBitAmbient : mIcon.ambient,
+                        width, height);
+            }
+        } else {
+            updateDateText(now, localTime);
+            if (!mStaticLayerValid || mStaticLayer == null
+                    || mStaticLayer.getWidth() != width || mStaticLayer.getHeight() != height) {
+                drawStaticLayer(width, height);
+            }
+            canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        }
+
+        // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+        updateTimeText(localTime);
+        canvas.drawText(mTimeText, 0, mTimeTextLength, width / 2f, mTimeYOffset, mTimeTextPaint);
+
+        long frameNanos = System.nanoTime() - start;
+        mStats.frames++;
+        mStats.totalFrameNanos += frameNanos;
+        mStats.maxFrameNanos = Math.max(mStats.maxFrameNanos, frameNanos);
+        mStats.allocations += Debug.getThreadAllocCount() - allocationsBefore;
+    }
+
+    private void drawStaticLayer(int width, int height) {
+        if (mStaticLayer == null
+                || mStaticLayer.getWidth() != width || mStaticLayer.getHeight() != height) {
+            mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mStaticLayerCanvas = new Canvas(mStaticLayer);
+        }
+        Canvas canvas = mStaticLayerCanvas;
+
+        // Get dimensions and center - adapted from https://developer.android.com/training/wearables/watch-faces/drawing.html
+        float centerX = width / 2f;
+        float centerY = height / 2f;
+
+        float thirdW = width / 3f;
+
+        float tempBaseline = height - mTempsYOffset;
+
+        canvas.drawRect(0, 0, width, height, mBackgroundPaint);
+
+        canvas.drawText(mDateText, centerX, mDateYOffset, mDateTextPaint);
+
+        if (mHighTempText != null) {
+            canvas.drawText(mHighTempText, centerX, tempBaseline, mTempsTextPaintHigh);
+        }
+        if (mLowTempText != null) {
+            canvas.drawText(mLowTempText, width - thirdW, tempBaseline, mTempsTextPaintLow);
+        }
+
+        // Center Line
+        canvas.drawLine(centerX - LINE_HALF_LENGTH, centerY,
+                centerX + LINE_HALF_LENGTH, centerY, mLinePaint);
+
+        // Icon
+        if (mIcon != null) {
+            drawIcon(canvas, mIcon.interactive, width, height);
+        }
+
+        mStaticLayerValid = true;
+        mStats.staticLayerBuilds++;
+    }
+
+    private void drawIcon(Canvas canvas, Bitmap icon, int width, int height) {
+        float tempBaseline = height - mTempsYOffset;
+        canvas.drawBitmap(icon, width / 3f - mIconWidth,
+                tempBaseline - (mIconWidth - mIconPadding / 2), mIconPaint);
+    }
+
+    private long zoneOffset(long now) {
+        if (now >= mZoneOffsetValidUntil || now < mZoneOffsetValidUntil - MINUTE_IN_MILLIS) {
+            mZoneOffset = mTimeZone.getOffset(now);
+            mZoneOffsetValidUntil = now - floorMod(now, MINUTE_IN_MILLIS) + MINUTE_IN_MILLIS;
+        }
+        return mZoneOffset;
+    }
+
+    private void updateTimeText(long localTime) {
+        long builtFor = localTime / (mAmbient ? MINUTE_IN_MILLIS : SECOND_IN_MILLIS);
+        // Tell the two modes apart, so switching between them rebuilds the text.
+        builtFor = builtFor * 2 + (mAmbient ? 1 : 0);
+        if (builtFor == mTimeTextBuiltFor) {
+            return;
+        }
+        long timeOfDay = floorMod(localTime, DAY_IN_MILLIS);
+        // Like Calendar.HOUR, 0 to 11.
+        int hour = (int) (timeOfDay / HOUR_IN_MILLIS) % 12;
+        int minute = (int) (timeOfDay / MINUTE_IN_MILLIS % 60);
+        int second = (int) (timeOfDay / SECOND_IN_MILLIS % 60);
+        mTimeTextLength = formatTime(mTimeText, hour, minute, second, !mAmbient);
+        mTimeTextBuiltFor = builtFor;
+        mStats.timeTextBuilds++;
+    }
+
+    private void updateDateText(long now, long localTime) {
+        long day = floorDiv(localTime, DAY_IN_MILLIS);
+        if (day == mDateTextBuiltFor) {
+            return;
+        }
+        // Once a day, so the formatter's garbage doesn't matter.
+        mCalendar.setTimeInMillis(now);
+        mDateText = mDateFormat.format(mCalendar.getTime());
+        mDateTextBuiltFor = day;
+        mStaticLayerValid = false;
+        mStats.dateTextBuilds++;
+    }
+
+    /**
+     * Writes "H:MM", or "H:MM:SS" with seconds, into a buffer of at least 8 chars.
+     *
+     * @return the length of the text
+     */
+    static int formatTime(char[] buffer, int hour, int minute, int second, boolean withSeconds) {
+        int length = 0;
+        if (hour >= 10) {
+            buffer[length++] = (char) ('0' + hour / 10);
+        }
+        buffer[length++] = (char) ('0' + hour % 10);
+        buffer[length++] = ':';
+        buffer[length++] = (char) ('0' + minute / 10);
+        buffer[length++] = (char) ('0' + minute % 10);
+        if (withSeconds) {
+            buffer[length++] = ':';
+            buffer[length++] = (char) ('0' + second / 10);
+            buffer[length++] = (char) ('0' + second % 10);
+        }
+        return length;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
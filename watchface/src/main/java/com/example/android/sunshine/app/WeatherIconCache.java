@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.util.LruCache;
+
+/**
+ * Decodes the weather art at exactly the size the watch face draws it, along with the versions
+ * shown in ambient mode, and keeps the last few around.  The art is large next to the icon, so
+ * it's subsampled while decoding rather than decoded in full and scaled down afterwards.
+ *
+ * Icons are keyed by the art they show and their size, so weather ids that share art share an
+ * icon.
+ */
+class WeatherIconCache {
+
+    // A few icons at a few sizes is plenty; the art only changes with the weather.
+    private static final int MAX_CACHE_BYTES = 512 * 1024;
+
+    /**
+     * The same icon for interactive, ambient and low-bit ambient mode.
+     */
+    static final class Icon {
+        final Bitmap interactive;
+        // Grayscale, so ambient mode doesn't show any color.
+        final Bitmap ambient;
+        // Only white or transparent pixels, for screens with fewer bits in ambient mode.
+        final Bitmap lowBitAmbient;
+
+        Icon(Bitmap interactive, Bitmap ambient, Bitmap lowBitAmbient) {
+            this.interactive = interactive;
+            this.ambient = ambient;
+            this.lowBitAmbient = lowBitAmbient;
+        }
+
+        int getByteCount() {
+            return interactive.getByteCount() + ambient.getByteCount()
+                    + lowBitAmbient.getByteCount();
+        }
+    }
+
+    private final Resources mResources;
+    private final LruCache<Long, Icon> mIcons = new LruCache<Long, Icon>(MAX_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Icon icon) {
+            return icon.getByteCount();
+        }
+    };
+    private int mDecodeCount;
+
+    WeatherIconCache(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * @return the icon for the weather, size pixels square.  Unknown weather gets the clear art.
+     */
+    Icon get(int weatherId, int size) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (artResourceId == -1) {
+            artResourceId = R.drawable.art_clear;
+        }
+        Long key = ((long) artResourceId << 32) | size;
+        Icon icon = mIcons.get(key);
+        if (icon == null) {
+            Bitmap interactive = decode(artResourceId, size);
+            icon = new Icon(interactive, toGrayscale(interactive), toLowBit(interactive));
+            mIcons.put(key, icon);
+            mDecodeCount++;
+        }
+        return icon;
+    }
+
+    /**
+     * @return how many icons had to be decoded
+     */
+    int getDecodeCount() {
+        return mDecodeCount;
+    }
+
+    private Bitmap decode(int artResourceId, int size) {
+        // Work with the art's own pixels, rather than having them scaled up for the density
+        // first and then back down again.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, artResourceId, options);
+
+        int sampleSize = 1;
+        int smallestSide = Math.min(options.outWidth, options.outHeight);
+        while (smallestSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap sampled = BitmapFactory.decodeResource(mResources, artResourceId, options);
+
+        if (sampled.getWidth() == size && sampled.getHeight() == size) {
+            return sampled;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, size, size, true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    private static Bitmap toGrayscale(Bitmap source) {
+        Bitmap gray = Bitmap.createBitmap(source.getWidth(), source.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        ColorMatrix matrix = new ColorMatrix();
+        matrix.setSaturation(0);
+        Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
+        new Canvas(gray).drawBitmap(source, 0, 0, paint);
+        return gray;
+    }
+
+    private static Bitmap toLowBit(Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] pixels = new int[width * height];
+        source.getPixels(pixels, 0, width, 0, 0, width, height);
+        // The art's colors don't survive as one bit, so draw its shape in white.
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (pixels[i] >>> 24) >= 0x80 ? 0xffffffff : 0;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+}